@@ -0,0 +1,33 @@
+/*
+ * Band-pass filter that keeps the changes between two time scales
+ *
+ * A high-pass stage removes what changes slower than the long window, then a moving
+ * average over the short window removes the noise that changes faster than it.
+ */
+public class BandPassFilter implements SignalFilter {
+	private final HighPassFilter highPass;
+	private final MovingAverageFilter lowPass;
+
+	/*
+	 * @param shortWindow samples averaged to remove the fast noise
+	 * @param longWindow samples averaged for the slow baseline that is removed
+	 */
+	public BandPassFilter(int shortWindow, int longWindow) {
+		if (shortWindow >= longWindow) {
+			throw new IllegalArgumentException("the short window must be shorter than the long window");
+		}
+		highPass = new HighPassFilter(longWindow);
+		lowPass = new MovingAverageFilter(shortWindow);
+	}
+
+	@Override
+	public float apply(float value) {
+		return lowPass.apply(highPass.apply(value));
+	}
+
+	@Override
+	public void reset() {
+		highPass.reset();
+		lowPass.reset();
+	}
+}
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.collections.ObservableList;
+import javafx.geometry.Point2D;
+import javafx.scene.Cursor;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Tooltip;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.shape.Line;
+
+/*
+ * The line chart of the main window and everything shown on it
+ *
+ * The chart, its axes, the series of the samples, the threshold line, the onset markers
+ * and the movement spans are made once, and are updated in place when a file is opened
+ * or movements are imported or detected. Nothing is added to or removed from the scene
+ * graph, and no listener is left behind on an old chart.
+ *
+ * The movements get no nodes. The times of their samples are kept in order, which is
+ * also the order of their x on the chart, so one mouse handler on the chart finds the
+ * movement under the mouse by binary search and shows its details in a shared tooltip.
+ * The text is only made when the tooltip moves to another movement.
+ */
+@SuppressWarnings("restriction")
+public class ChartView {
+	private final DateAxis xAxis;
+	private final NumberAxis yAxis;
+	private final LineChartWithMarkers chart;
+	// Pixels from a movement's sample (either way) that the mouse picks it up
+	private static final double HIT = 7.5;
+
+	// The movements with a sample, in order of onset, and the time and value of their sample
+	private List<Movement> movements = new ArrayList<Movement>();
+	private long[] eventTime = new long[0];
+	private float[] eventValue = new float[0];
+	// The details of the movement under the mouse, and which movement that is (-1 if none)
+	private final Tooltip tooltip = new Tooltip();
+	private int hovered = -1;
+	private final XYChart.Data<Date, Number> thresholdMarker;
+	private final DoubleProperty threshold = new SimpleDoubleProperty(this, "threshold");
+	// Called when the threshold line is let go after being dragged
+	private Runnable onThresholdReleased;
+	private boolean thresholdMoved;
+
+	/*
+	 * @param data the chart points of the samples, shown as they change
+	 * @param thresholdValue the threshold (g) the line starts at
+	 */
+	public ChartView(ObservableList<XYChart.Data<Date, Number>> data, double thresholdValue) {
+		// Define the axes
+		xAxis = new DateAxis();
+		yAxis = new NumberAxis(0, 7, 1);
+		xAxis.setLabel("Time");
+		yAxis.setLabel("Force (g)");
+		xAxis.setAutoRanging(true);
+		yAxis.setAutoRanging(true);
+
+		chart = new LineChartWithMarkers(xAxis, yAxis);
+		chart.setTitle("Leg Movement Analysis");
+		chart.setId("chart");
+		// Hide datepoint symbols
+		chart.setCreateSymbols(false);
+		chart.setLegendVisible(false);
+		chart.setHorizontalGridLinesVisible(true);
+		chart.setAnimated(false);
+		chart.setCursor(Cursor.CROSSHAIR);
+
+		chart.getData().add(new XYChart.Series<Date, Number>("RawData", data));
+
+		// Show the details of the movement under the mouse, added to the handlers set by Main
+		tooltip.setStyle("-fx-font-weight: bold;");
+		chart.addEventHandler(MouseEvent.MOUSE_MOVED, e -> hover(eventAt(e), e));
+		chart.addEventHandler(MouseEvent.MOUSE_EXITED, e -> hover(-1, e));
+		chart.addEventHandler(MouseEvent.MOUSE_CLICKED, e -> {
+			int i = eventAt(e);
+			if (i >= 0) {
+				// When a movement is clicked, open a dialog box with its details
+				Alert alert = new Alert(AlertType.INFORMATION);
+				alert.setTitle("Movement Information");
+				alert.setHeaderText("Movement Details");
+				alert.setContentText(describe(movements.get(i)));
+				alert.showAndWait();
+			}
+		});
+
+		// Threshold line, made easier to grab
+		threshold.set(thresholdValue);
+		thresholdMarker = new XYChart.Data<Date, Number>(new Date(), thresholdValue);
+		chart.addHorizontalValueMarker(thresholdMarker);
+		threshold.addListener(o -> thresholdMarker.setYValue(threshold.get()));
+		Line line = (Line) thresholdMarker.getNode();
+		line.setStrokeWidth(3);
+		line.setCursor(Cursor.V_RESIZE);
+		line.setOnMouseDragged(e -> {
+			// The line is in the plot area, so its y is a display position of the y-axis
+			thresholdMoved = true;
+			threshold.set(Math.max(0, yAxis.getValueForDisplay(e.getY()).doubleValue()));
+		});
+		line.setOnMouseReleased(e -> {
+			if (thresholdMoved && onThresholdReleased != null) {
+				onThresholdReleased.run();
+			}
+			thresholdMoved = false;
+		});
+	}
+
+	/*
+	 * Clear the movements and fit the axes to the data again, for a new recording
+	 */
+	public void reset() {
+		xAxis.setAutoRanging(true);
+		yAxis.setAutoRanging(true);
+		setEvents(new ArrayList<Movement>(), new long[0], new float[0]);
+		chart.setVerticalValueMarkers(Collections.<XYChart.Data<Date, Number>>emptyList());
+		chart.setEventSpans(EventSpans.EMPTY);
+	}
+
+	/*
+	 * Replace the shaded time spans of the movements
+	 */
+	public void setSpans(EventSpans spans) {
+		chart.setEventSpans(spans);
+	}
+
+	/*
+	 * Replace the movements that show their details under the mouse
+	 * @param movements the movements, in order of onset
+	 * @param time the time of the sample of each movement
+	 * @param value the value of the sample of each movement
+	 */
+	public void setEvents(List<Movement> movements, long[] time, float[] value) {
+		this.movements = movements;
+		eventTime = time;
+		eventValue = value;
+		hovered = -1;
+		tooltip.hide();
+	}
+
+	/*
+	 * Find the movement under the mouse: the movements either side of the time under it
+	 * are looked at, out to HIT pixels, and the nearest with its sample within HIT pixels
+	 * of the mouse is taken
+	 * @returns the index of the movement, -1 if none
+	 */
+	private int eventAt(MouseEvent e) {
+		if (eventTime.length == 0 || xAxis.getWidth() <= 0) {
+			return -1;
+		}
+		Point2D onX = xAxis.sceneToLocal(e.getSceneX(), e.getSceneY());
+		double x = onX.getX(), y = yAxis.sceneToLocal(e.getSceneX(), e.getSceneY()).getY();
+		if (x < 0 || x > xAxis.getWidth()) {
+			return -1;
+		}
+		int at = search(eventTime, xAxis.getValueForDisplay(x).getTime());
+		int nearest = -1;
+		double distance = Double.MAX_VALUE;
+		for (int step = -1; step <= 1; step += 2) {
+			for (int i = (step < 0) ? at - 1 : at; i >= 0 && i < eventTime.length; i += step) {
+				double dx = Math.abs(xAxis.getDisplayPosition(new Date(eventTime[i])) - x);
+				if (dx > HIT) {
+					break;
+				}
+				double dy = Math.abs(yAxis.getDisplayPosition(eventValue[i]) - y);
+				if (dy <= HIT && dx + dy < distance) {
+					nearest = i;
+					distance = dx + dy;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/*
+	 * Show the tooltip for a movement by the mouse, or hide it
+	 */
+	private void hover(int i, MouseEvent e) {
+		if (i < 0) {
+			hovered = -1;
+			tooltip.hide();
+			return;
+		}
+		if (i != hovered) {
+			hovered = i;
+			tooltip.setText(describe(movements.get(i)));
+		}
+		tooltip.show(chart, e.getScreenX() + HIT, e.getScreenY() + HIT);
+	}
+
+	/*
+	 * @returns the index of the first of the values at or after the given time (values.length if none)
+	 */
+	private static int search(long[] values, long millis) {
+		int low = 0, high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < millis) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * @returns the details of a movement, as shown by the tooltip
+	 */
+	static String describe(Movement m) {
+		String lab = "Start Time: " + TimestampCodec.local().format(m.getTime()) + "\nEvent Type: " + m.getType()
+				+ "\nStrength: " + m.getStr() + "\nDuration: " + m.getDur() + "\nInterval: " + m.getInterval();
+		if (!m.getReason().isEmpty()) {
+			lab += "\nRejection Reason: " + m.getReason();
+		}
+		return lab;
+	}
+
+	/*
+	 * Replace the onset markers with a vertical line at each of the given times
+	 */
+	public void setOnsets(List<Date> times) {
+		List<XYChart.Data<Date, Number>> onsets = new ArrayList<XYChart.Data<Date, Number>>(times.size());
+		for (Date time : times) {
+			onsets.add(new XYChart.Data<Date, Number>(time, 0));
+		}
+		chart.setVerticalValueMarkers(onsets);
+	}
+
+	public LineChartWithMarkers getChart() {
+		return chart;
+	}
+
+	public DateAxis getXAxis() {
+		return xAxis;
+	}
+
+	public NumberAxis getYAxis() {
+		return yAxis;
+	}
+
+	/*
+	 * @returns the threshold (g) of the threshold line, which changes as the line is dragged
+	 */
+	public DoubleProperty thresholdProperty() {
+		return threshold;
+	}
+
+	/*
+	 * @param action run when the threshold line is let go after being dragged
+	 */
+	public void setOnThresholdReleased(Runnable action) {
+		onThresholdReleased = action;
+	}
+}
@@ -33,8 +33,6 @@ import javafx.scene.chart.Axis;
 import javafx.util.Duration;
 import javafx.util.StringConverter;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -115,6 +113,11 @@ public final class DateAxis extends Axis<Date> {
      */
     private Date minDate, maxDate;
 
+    /**
+     * The bounds of the data given by its source, if any.
+     */
+    private Date dataLowerBound, dataUpperBound;
+
     private ObjectProperty<Date> lowerBound = new ObjectPropertyBase<Date>() {
         @Override
         protected void invalidated() {
@@ -161,6 +164,20 @@ public final class DateAxis extends Axis<Date> {
 
     private Interval actualInterval = Interval.DECADE;
 
+    private final TimestampCodec timestamps = new TimestampCodec();
+
+    /**
+     * Used to step through the tick values, the axis is only laid out on the FX thread.
+     */
+    private final Calendar calendar = Calendar.getInstance();
+
+    /**
+     * The tick labels formatted so far, by the millis of their tick.
+     */
+    private final Map<Long, String> labels = new HashMap<Long, String>();
+
+    private static final int MAX_LABELS = 512;
+
     /**
      * Default constructor. By default the lower and upper bound are calculated by the data.
      */
@@ -196,14 +213,40 @@ public final class DateAxis extends Axis<Date> {
     public void invalidateRange(List<Date> list) {
         super.invalidateRange(list);
 
-        Collections.sort(list);
-        if (list.isEmpty()) {
+        // Bounds given by the source of the data need no look at the data at all.
+        if (dataLowerBound != null && dataUpperBound != null) {
+            minDate = dataLowerBound;
+            maxDate = dataUpperBound;
+        } else if (list.isEmpty()) {
             minDate = maxDate = new Date();
-        } else if (list.size() == 1) {
-            minDate = maxDate = list.get(0);
-        } else if (list.size() > 1) {
-            minDate = list.get(0);
-            maxDate = list.get(list.size() - 1);
+        } else {
+            // One pass for the min and max date, the list holds the dates of all series and is left as it is.
+            Date min = null, max = null;
+            for (Date date : list) {
+                if (min == null || date.before(min)) {
+                    min = date;
+                }
+                if (max == null || date.after(max)) {
+                    max = date;
+                }
+            }
+            minDate = min;
+            maxDate = max;
+        }
+    }
+
+    /**
+     * Sets the bounds of the data, as known by its source, so auto ranging takes them instead of looking through the dates of every series on each layout.
+     * Only set them if no data falls outside of them.
+     *
+     * @param lower The min date of the data, or null to look through the data again.
+     * @param upper The max date of the data, or null to look through the data again.
+     */
+    public final void setDataBounds(Date lower, Date upper) {
+        dataLowerBound = lower;
+        dataUpperBound = upper;
+        if (lower != null && upper != null) {
+            invalidateRange(Collections.<Date>emptyList());
         }
     }
 
@@ -351,54 +394,42 @@ public final class DateAxis extends Axis<Date> {
         Object[] r = (Object[]) range;
         Date lower = (Date) r[0];
         Date upper = (Date) r[1];
-
-        List<Date> dateList = new ArrayList<Date>();
-        Calendar calendar = Calendar.getInstance();
+        long span = Math.max(0, upper.getTime() - lower.getTime());
 
         // The preferred gap which should be between two tick marks.
         double averageTickGap = 100;
         double averageTicks = v / averageTickGap;
 
-        List<Date> previousDateList = new ArrayList<Date>();
-
-        Interval previousInterval = Interval.values()[0];
-
-        // Starting with the greatest interval, add one of each calendar unit.
-        for (Interval interval : Interval.values()) {
-            // Reset the calendar.
-            calendar.setTime(lower);
-            // Clear the list.
-            dateList.clear();
-            previousDateList.clear();
-            actualInterval = interval;
-
-            // Loop as long we exceeded the upper bound.
-            while (calendar.getTime().getTime() <= upper.getTime()) {
-                dateList.add(calendar.getTime());
-                calendar.add(interval.interval, interval.amount);
-            }
-            // Then check the size of the list. If it is greater than the amount of ticks, take that list.
-            if (dateList.size() > averageTicks) {
-                calendar.setTime(lower);
-                // Recheck if the previous interval is better suited.
-                while (calendar.getTime().getTime() <= upper.getTime()) {
-                    previousDateList.add(calendar.getTime());
-                    calendar.add(previousInterval.interval, previousInterval.amount);
-                }
+        // Starting with the greatest interval, find the first one which gives more ticks than wanted.
+        // The number of ticks of an interval is worked out from its length, so no dates are made for the intervals not taken.
+        Interval[] intervals = Interval.values();
+        Interval previousInterval = intervals[0];
+        actualInterval = intervals[intervals.length - 1];
+        for (Interval interval : intervals) {
+            if (interval.ticks(span) > averageTicks) {
+                actualInterval = interval;
                 break;
             }
-
             previousInterval = interval;
         }
-        if (previousDateList.size() - averageTicks > averageTicks - dateList.size()) {
-            dateList = previousDateList;
+        // Recheck if the previous interval is better suited.
+        if (previousInterval != actualInterval
+                && previousInterval.ticks(span) - averageTicks > averageTicks - actualInterval.ticks(span)) {
             actualInterval = previousInterval;
         }
 
+        // Only step the calendar through the interval taken.
+        List<Date> dateList = new ArrayList<Date>();
+        calendar.setTime(lower);
+        while (calendar.getTimeInMillis() <= upper.getTime()) {
+            dateList.add(calendar.getTime());
+            calendar.add(actualInterval.interval, actualInterval.amount);
+        }
+
         // At last add the upper bound.
         dateList.add(upper);
 
-        List<Date> evenDateList = makeDatesEven(dateList, calendar);
+        List<Date> evenDateList = makeDatesEven(dateList);
         // If there are at least three dates, check if the gap between the lower date and the second date is at least half the gap of the second and third date.
         // Do the same for the upper bound.
         // If gaps between dates are to small, remove one of them.
@@ -442,10 +473,10 @@ public final class DateAxis extends Axis<Date> {
             return converter.toString(date);
         }
 
+        /*
         DateFormat dateFormat;
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(date);
-        /*
         if (actualInterval.interval == Calendar.YEAR && calendar.get(Calendar.MONTH) == 0 && calendar.get(Calendar.DATE) == 1) {
             dateFormat = new SimpleDateFormat("yyyy");
         } else if (actualInterval.interval == Calendar.MONTH && calendar.get(Calendar.DATE) == 1) {
@@ -469,8 +500,16 @@ public final class DateAxis extends Axis<Date> {
                     break;
             }
         }*/
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        return dateFormat.format(date);
+        // Ticks are made even, so most of them are the same as the last layout's when the axis is moved
+        String label = labels.get(date.getTime());
+        if (label == null) {
+            if (labels.size() >= MAX_LABELS) {
+                labels.clear();
+            }
+            label = timestamps.format(date);
+            labels.put(date.getTime(), label);
+        }
+        return label;
     }
 
     /**
@@ -479,7 +518,7 @@ public final class DateAxis extends Axis<Date> {
      * @param dates The list of dates.
      * @return The new list of dates.
      */
-    private List<Date> makeDatesEven(List<Date> dates, Calendar calendar) {
+    private List<Date> makeDatesEven(List<Date> dates) {
         // If the dates contain more dates than just the lower and upper bounds, make the dates in between even.
         if (dates.size() > 2) {
             List<Date> evenDates = new ArrayList<Date>();
@@ -670,9 +709,46 @@ public final class DateAxis extends Axis<Date> {
 
         private final int interval;
 
+        /**
+         * The average length of the interval in millis.
+         */
+        private final double millis;
+
         private Interval(int interval, int amount) {
             this.interval = interval;
             this.amount = amount;
+            this.millis = amount * unitMillis(interval);
+        }
+
+        /**
+         * Gets the number of ticks this interval gives over a span, counting the lower bound.
+         *
+         * @param span The span in millis.
+         * @return The number of ticks, as near as months and years allow.
+         */
+        private double ticks(long span) {
+            return Math.floor(span / millis) + 1;
+        }
+
+        private static double unitMillis(int field) {
+            switch (field) {
+                case Calendar.YEAR:
+                    return 365.2425 * 86400000L;
+                case Calendar.MONTH:
+                    return 365.2425 / 12 * 86400000L;
+                case Calendar.WEEK_OF_YEAR:
+                    return 7 * 86400000L;
+                case Calendar.DATE:
+                    return 86400000L;
+                case Calendar.HOUR:
+                    return 3600000L;
+                case Calendar.MINUTE:
+                    return 60000L;
+                case Calendar.SECOND:
+                    return 1000L;
+                default:
+                    return 1;
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+/*
+ * Min/max downsampling of a channel for display
+ *
+ * The time span shown is split into equal buckets, normally one per pixel, and each
+ * bucket is reduced to its first, lowest, highest and last sample, in time order.
+ * Drawn as a line these look the same as all of the samples of the bucket: the
+ * spikes are kept and the line joins the neighbouring buckets where it should.
+ * So a chart never needs more than 4 points per pixel, however long the span is.
+ */
+public class Downsampler {
+	// Points written per bucket at most
+	public static final int POINTS_PER_BUCKET = 4;
+
+	/*
+	 * Reduce the samples [from, to) to the first, lowest, highest and last sample
+	 * of each bucket of the time span [start, end]
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param buckets number of buckets the span is split into
+	 * @param outTime receives the times of the points, needs POINTS_PER_BUCKET * buckets room
+	 * @param outValue receives the values of the points
+	 * @return the number of points written
+	 */
+	public static int reduce(long[] time, float[] signal, int from, int to, long start, long end, int buckets,
+			long[] outTime, float[] outValue) {
+		int n = 0;
+		if (from >= to || buckets < 1) {
+			return n;
+		}
+		int bucket = -1;
+		int first = 0, min = 0, max = 0, last = 0;
+		for (int i = from; i < to; i++) {
+			// In whole numbers, so MinMaxPyramid.reduce puts the edges in the same place
+			long b = (end > start) ? (time[i] - start) * buckets / (end - start) : 0;
+			b = (b < 0) ? 0 : (b >= buckets) ? buckets - 1 : b;
+			if (b != bucket) {
+				if (bucket >= 0) {
+					n = emit(time, signal, first, min, max, last, outTime, outValue, n);
+				}
+				bucket = (int) b;
+				first = min = max = i;
+			} else if (signal[i] < signal[min]) {
+				min = i;
+			} else if (signal[i] > signal[max]) {
+				max = i;
+			}
+			last = i;
+		}
+		return emit(time, signal, first, min, max, last, outTime, outValue, n);
+	}
+
+	/*
+	 * Write the distinct samples of a bucket in time order
+	 * @return the number of points written so far
+	 */
+	static int emit(long[] time, float[] signal, int first, int min, int max, int last,
+			long[] outTime, float[] outValue, int n) {
+		int low = Math.min(min, max);
+		int high = Math.max(min, max);
+		n = put(time, signal, first, outTime, outValue, n);
+		if (low != first) {
+			n = put(time, signal, low, outTime, outValue, n);
+		}
+		if (high != low) {
+			n = put(time, signal, high, outTime, outValue, n);
+		}
+		if (last != high) {
+			n = put(time, signal, last, outTime, outValue, n);
+		}
+		return n;
+	}
+
+	private static int put(long[] time, float[] signal, int i, long[] outTime, float[] outValue, int n) {
+		outTime[n] = time[i];
+		outValue[n] = signal[i];
+		return n + 1;
+	}
+}
@@ -0,0 +1,46 @@
+import java.util.List;
+
+/*
+ * Finds the sample at the onset of each movement
+ *
+ * The movements (in order of onset) are walked alongside the sample times in a single
+ * merge pass, so matching costs O(samples + movements) rather than comparing every
+ * sample with every movement. Imported onsets do not always land exactly on a sample
+ * time, so an onset takes the nearest sample within a tolerance.
+ */
+public class EventMatcher {
+	// Furthest a sample may be from an onset and still match it (ms), half the shortest movement
+	public static final long DEFAULT_TOLERANCE = 500;
+
+	/*
+	 * Match each movement to the sample nearest its onset
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param size number of samples
+	 * @param movements the movements in order of onset
+	 * @param tolerance furthest (ms) a sample may be from an onset
+	 * @return the index of the sample of each movement, -1 if none is within the tolerance
+	 */
+	public static int[] match(long[] time, int size, List<Movement> movements, long tolerance) {
+		int[] at = new int[movements.size()];
+		int j = 0;
+		for (int i = 0; i < at.length; i++) {
+			long onset = movements.get(i).getTime().getTime();
+			// The first sample at or after the onset, the onsets only move forward
+			while (j < size && time[j] < onset) {
+				j++;
+			}
+			int nearest = -1;
+			long distance = Long.MAX_VALUE;
+			if (j < size) {
+				nearest = j;
+				distance = time[j] - onset;
+			}
+			if (j > 0 && onset - time[j - 1] < distance) {
+				nearest = j - 1;
+				distance = onset - time[j - 1];
+			}
+			at[i] = (distance <= tolerance) ? nearest : -1;
+		}
+		return at;
+	}
+}
@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * The time spans (onset to onset + duration) of a list of movements, for shading them on a chart
+ *
+ * The spans are kept in order of their onset along with the longest of them, so the
+ * spans over a window are found by binary search and the rest are never looked at.
+ * runs() joins the spans of a type that meet on screen, so a window is drawn with at
+ * most one shape per type and one run per two pixels, however many movements it holds.
+ */
+public class EventSpans {
+	// The movement types in the order of their index
+	public static final String[] TYPES = { "P", "R", "I", "U" };
+	public static final EventSpans EMPTY = new EventSpans(Collections.<Movement>emptyList());
+
+	// Onset and end (epoch millis) and type index of each span, in order of onset
+	private final long[] start;
+	private final long[] end;
+	private final byte[] type;
+	// Length of the longest span (ms)
+	private final long longest;
+
+	/*
+	 * @param movements the movements, in any order
+	 */
+	public EventSpans(List<Movement> movements) {
+		List<Movement> sorted = new ArrayList<Movement>(movements);
+		sorted.sort(Comparator.comparing(Movement::getTime));
+		start = new long[sorted.size()];
+		end = new long[sorted.size()];
+		type = new byte[sorted.size()];
+		long longest = 0;
+		for (int i = 0; i < start.length; i++) {
+			Movement m = sorted.get(i);
+			start[i] = m.getTime().getTime();
+			end[i] = start[i] + Math.max(0, Math.round(m.getDur() * 1000));
+			type[i] = (byte) type(m.getType());
+			longest = Math.max(longest, end[i] - start[i]);
+		}
+		this.longest = longest;
+	}
+
+	/*
+	 * @returns the index of a movement type in TYPES
+	 */
+	public static int type(String type) {
+		switch (type) {
+		case "P":
+			return 0;
+		case "R":
+			return 1;
+		case "I":
+			return 2;
+		default:
+			return 3;
+		}
+	}
+
+	public int size() {
+		return start.length;
+	}
+
+	/*
+	 * @returns the onset (epoch millis) of the i-th span
+	 */
+	public long getStart(int i) {
+		return start[i];
+	}
+
+	/*
+	 * @returns the type index of the i-th span
+	 */
+	public int getType(int i) {
+		return type[i];
+	}
+
+	/*
+	 * @returns the index of the first span with its onset at or after the given time (size() if none)
+	 */
+	public int indexAt(long millis) {
+		int low = 0, high = start.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (start[mid] < millis) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Find the runs of pixels covered by the spans of a type over the window [from, to].
+	 * Each span covers at least one pixel, and spans that overlap or meet on screen are
+	 * joined into one run.
+	 * @param pixelsPerMilli the scale of the chart
+	 * @param out receives the left and right x (from the left of the window) of each run
+	 * @return the number of runs written (no more than out has room for)
+	 */
+	public int runs(int kind, long from, long to, double pixelsPerMilli, double[] out) {
+		int n = 0;
+		double width = (to - from) * pixelsPerMilli;
+		double runLeft = 0, runRight = Double.NEGATIVE_INFINITY;
+		// Only the spans with their onset no further back than the longest span can reach the window
+		for (int i = indexAt(from - longest), last = indexAt(to + 1); i < last; i++) {
+			if (type[i] != kind || end[i] < from) {
+				continue;
+			}
+			// Clamped a pixel past the edges so the chart shows no edge of its own
+			double left = Math.max(-1, Math.floor((start[i] - from) * pixelsPerMilli));
+			double right = Math.min(width + 1, Math.max(left + 1, Math.ceil((end[i] - from) * pixelsPerMilli)));
+			if (left <= runRight) {
+				runRight = Math.max(runRight, right);
+				continue;
+			}
+			if (runRight > Double.NEGATIVE_INFINITY) {
+				if (2 * n + 1 >= out.length) {
+					return n;
+				}
+				out[2 * n] = runLeft;
+				out[2 * n + 1] = runRight;
+				n++;
+			}
+			runLeft = left;
+			runRight = right;
+		}
+		if (runRight > Double.NEGATIVE_INFINITY && 2 * n + 1 < out.length) {
+			out[2 * n] = runLeft;
+			out[2 * n + 1] = runRight;
+			n++;
+		}
+		return n;
+	}
+}
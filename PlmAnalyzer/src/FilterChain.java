@@ -0,0 +1,43 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Filter stages run one after the other
+ *
+ * Each sample goes through every stage before the next sample comes in, so a chain
+ * filters a channel in a single pass. An empty chain passes the samples through.
+ */
+public class FilterChain implements SignalFilter {
+	private final List<SignalFilter> stages = new ArrayList<SignalFilter>();
+
+	/*
+	 * Add a stage to the end of the chain
+	 * @return this chain
+	 */
+	public FilterChain add(SignalFilter stage) {
+		stages.add(stage);
+		return this;
+	}
+
+	/*
+	 * @returns if the chain has no stages
+	 */
+	public boolean isEmpty() {
+		return stages.isEmpty();
+	}
+
+	@Override
+	public float apply(float value) {
+		for (int s = 0; s < stages.size(); s++) {
+			value = stages.get(s).apply(value);
+		}
+		return value;
+	}
+
+	@Override
+	public void reset() {
+		for (SignalFilter stage : stages) {
+			stage.reset();
+		}
+	}
+}
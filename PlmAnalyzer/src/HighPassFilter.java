@@ -0,0 +1,27 @@
+/*
+ * High-pass filter that removes gravity and other slow offsets
+ *
+ * Subtracts the moving average of the last window samples from each sample, so
+ * what changes slower than the window (the 1 g of gravity, sensor drift) is removed
+ * and the leg movements stay.
+ */
+public class HighPassFilter implements SignalFilter {
+	private final MovingAverageFilter baseline;
+
+	/*
+	 * @param window number of samples the baseline is averaged over
+	 */
+	public HighPassFilter(int window) {
+		baseline = new MovingAverageFilter(window);
+	}
+
+	@Override
+	public float apply(float value) {
+		return value - baseline.apply(value);
+	}
+
+	@Override
+	public void reset() {
+		baseline.reset();
+	}
+}
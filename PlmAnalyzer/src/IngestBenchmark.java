@@ -0,0 +1,56 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Benchmark for the raw data ingest
+ *
+ * Parses a raw data csv file on fork-join pools of 1, 2, 4, ... threads up to the
+ * number of cores and prints the best throughput of each, to show how parsing
+ * scales with core count. So far it has only been run on a single core machine,
+ * so the speedup of the parallel parse has not been measured yet.
+ * Usage: java IngestBenchmark file.csv [runs]
+ */
+public class IngestBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java IngestBenchmark file.csv [runs]");
+			return;
+		}
+		File file = new File(args[0]);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		// Warm up the parser so the first measurement is not paying for the JIT
+		ForkJoinPool warmup = new ForkJoinPool(cores);
+		for (int i = 0; i < 2; i++) {
+			RawDataParser.parse(file, null, warmup);
+		}
+		warmup.shutdown();
+
+		System.out.println();
+		System.out.println("Threads\tRows/s\t\tMB/s\tSpeedup");
+		double single = 0;
+		for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			double best = 0;
+			double bestMb = 0;
+			for (int i = 0; i < runs; i++) {
+				RawDataParser.Result result = RawDataParser.parse(file, null, pool);
+				if (result.rowsPerSecond() > best) {
+					best = result.rowsPerSecond();
+					bestMb = result.megabytesPerSecond();
+				}
+			}
+			pool.shutdown();
+			if (threads == 1) {
+				single = best;
+			}
+			System.out.println(String.format("%d\t%.0f\t%.1f\t%.2fx", threads, best, bestMb, best / single));
+			if (threads == cores) {
+				break;
+			}
+		}
+	}
+}
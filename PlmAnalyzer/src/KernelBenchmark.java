@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Benchmark for the signal kernels
+ *
+ * Loads a raw data csv file (or its cache) and times the double and the float path
+ * of every kernel in SignalKernels over the whole recording, printing the best time
+ * of each, the speedup of the float path and the largest difference between the two.
+ * Usage: java KernelBenchmark file.csv [runs]
+ */
+public class KernelBenchmark {
+	// Samples per window of the energy kernel (1 s at 100 Hz)
+	private static final int WINDOW = 100;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java KernelBenchmark file.csv [runs]");
+			return;
+		}
+		File file = new File(args[0]);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		SampleStore store = SampleCache.load(file);
+		if (store == null) {
+			store = new SampleStore(RawDataParser.parse(file));
+		}
+		int n = store.size();
+		float[] x = store.getAccX(), y = store.getAccY(), z = store.getAccZ();
+		float[] gx = store.getGyroX(), gy = store.getGyroY(), gz = store.getGyroZ();
+		long[] time = store.getTimes();
+		float[] magnitude = SignalKernels.magnitude(x, y, z, n);
+		float[] inDouble = new float[n];
+		float[] inFloat = new float[n];
+		int windows = SignalKernels.windows(0, n, WINDOW);
+
+		System.out.println();
+		System.out.println(String.format("%d samples, best of %d runs", n, runs));
+		System.out.println("Kernel\t\tDouble ms\tFloat ms\tSpeedup\tMax diff");
+		long[] best = new long[2];
+		for (int kernel = 0; kernel < 4; kernel++) {
+			best[0] = best[1] = Long.MAX_VALUE;
+			// The first runs warm up the JIT
+			for (int r = 0; r < runs + 5; r++) {
+				for (int path = 0; path < 2; path++) {
+					long start = System.nanoTime();
+					switch (kernel) {
+					case 0:
+						if (path == 0) SignalKernels.magnitudeDouble(x, y, z, 0, n, inDouble);
+						else SignalKernels.magnitudeFloat(x, y, z, 0, n, inFloat);
+						break;
+					case 1:
+						if (path == 0) SignalKernels.magnitudeDouble(gx, gy, gz, 0, n, inDouble);
+						else SignalKernels.magnitudeFloat(gx, gy, gz, 0, n, inFloat);
+						break;
+					case 2:
+						if (path == 0) SignalKernels.jerkDouble(time, magnitude, 0, n, inDouble);
+						else SignalKernels.jerkFloat(time, magnitude, 0, n, inFloat);
+						break;
+					default:
+						if (path == 0) SignalKernels.windowEnergyDouble(magnitude, 0, n, WINDOW, inDouble);
+						else SignalKernels.windowEnergyFloat(magnitude, 0, n, WINDOW, inFloat);
+						break;
+					}
+					long elapsed = System.nanoTime() - start;
+					if (r >= 5) {
+						best[path] = Math.min(best[path], elapsed);
+					}
+				}
+			}
+			double diff = 0;
+			for (int i = 0, count = (kernel == 3) ? windows : n; i < count; i++) {
+				diff = Math.max(diff, Math.abs(inDouble[i] - inFloat[i]));
+			}
+			String name = new String[] { "AccMagnitude", "GyroMagnitude", "Jerk\t", "WindowEnergy" }[kernel];
+			System.out.println(String.format("%s\t%.2f\t\t%.2f\t\t%.2fx\t%.3g", name, best[0] / 1e6, best[1] / 1e6,
+					(double) best[0] / best[1], diff));
+		}
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Streaming estimate of the leg angle from the accelerometer gravity vector
+ *
+ * Samples are fed in time order. The gravity vector is followed with a low-pass
+ * filter of the accelerometer. Optionally the gyroscope rotates the estimate between
+ * samples (a complementary filter), so it keeps up with the leg turning while the
+ * low-pass filter removes the movement itself.
+ *
+ * The angle needs the axis of the sensor that is normal to the shin: it points along
+ * gravity when the leg lies flat and across gravity when the leg hangs down. The angle
+ * of the leg from horizontal is the angle between that axis and gravity, and the leg
+ * counts as down (in bed) below DOWN_ANGLE. The axis depends on how the sensor is
+ * mounted. By default it is the sensor's X axis (DEFAULT_AXIS), which assumes the
+ * sensor is worn flat on the front of the ankle; nothing in the data checks this, so
+ * a sensor mounted another way needs its own axis or every down flag is wrong.
+ * Only the current estimate is kept, never an angle per sample.
+ */
+public class LegAngleEstimator {
+	// Leg angles (degrees from horizontal) below this are leg down
+	public static final double DOWN_ANGLE = 65.0;
+	// Axis of the sensor normal to the shin when nothing else is given (X, sensor flat on the front of the ankle)
+	public static final double[] DEFAULT_AXIS = { 1, 0, 0 };
+	// Time constant of the gravity filter (s)
+	public static final double DEFAULT_TIME_CONSTANT = 1.0;
+	// Time constants of samples needed to settle the filter (what came before weighs e^-10)
+	private static final double SETTLE = 10;
+
+	private final double timeConstant; // s
+	private final boolean useGyro;
+	// Unit vector of the axis normal to the shin, in the sensor frame
+	private final double nx, ny, nz;
+	// Current gravity estimate (g) and the time of the last sample
+	private double gx, gy, gz;
+	private long last = Long.MIN_VALUE;
+
+	/*
+	 * Create an estimator that only uses the accelerometer
+	 */
+	public LegAngleEstimator() {
+		this(DEFAULT_TIME_CONSTANT, false);
+	}
+
+	/*
+	 * @param timeConstant time constant (s) of the gravity filter
+	 * @param useGyro if the gyroscope (degrees/s) rotates the estimate between samples
+	 */
+	public LegAngleEstimator(double timeConstant, boolean useGyro) {
+		this(timeConstant, useGyro, DEFAULT_AXIS);
+	}
+
+	/*
+	 * @param timeConstant time constant (s) of the gravity filter
+	 * @param useGyro if the gyroscope (degrees/s) rotates the estimate between samples
+	 * @param axis the axis of the sensor normal to the shin (x, y, z in the sensor frame, any length)
+	 */
+	public LegAngleEstimator(double timeConstant, boolean useGyro, double[] axis) {
+		if (axis.length != 3) {
+			throw new IllegalArgumentException("the axis needs 3 components");
+		}
+		double length = Math.sqrt(axis[0] * axis[0] + axis[1] * axis[1] + axis[2] * axis[2]);
+		if (!(length > 0)) {
+			throw new IllegalArgumentException("the axis must not be zero");
+		}
+		this.timeConstant = timeConstant;
+		this.useGyro = useGyro;
+		nx = axis[0] / length;
+		ny = axis[1] / length;
+		nz = axis[2] / length;
+	}
+
+	/*
+	 * Feed the next sample
+	 * @param time the sample time (epoch millis)
+	 */
+	public void accept(long time, float ax, float ay, float az, float wx, float wy, float wz) {
+		if (last == Long.MIN_VALUE) {
+			// Start from the first reading
+			gx = ax;
+			gy = ay;
+			gz = az;
+			last = time;
+			return;
+		}
+		double dt = (time - last) / 1000.0;
+		last = time;
+		if (dt <= 0) {
+			return;
+		}
+		if (useGyro) {
+			// The sensor turned by w * dt, so gravity turned the other way in the sensor frame: g -= (w x g) dt
+			double rx = Math.toRadians(wx) * dt, ry = Math.toRadians(wy) * dt, rz = Math.toRadians(wz) * dt;
+			double x = gx - (ry * gz - rz * gy);
+			double y = gy - (rz * gx - rx * gz);
+			double z = gz - (rx * gy - ry * gx);
+			gx = x;
+			gy = y;
+			gz = z;
+		}
+		double alpha = timeConstant / (timeConstant + dt);
+		gx = alpha * gx + (1 - alpha) * ax;
+		gy = alpha * gy + (1 - alpha) * ay;
+		gz = alpha * gz + (1 - alpha) * az;
+	}
+
+	/*
+	 * @returns the current angle of the leg from horizontal (degrees)
+	 */
+	public double getAngle() {
+		double g = Math.sqrt(gx * gx + gy * gy + gz * gz);
+		if (g == 0) {
+			return 0;
+		}
+		double along = Math.abs(gx * nx + gy * ny + gz * nz);
+		return Math.toDegrees(Math.acos(Math.min(1.0, along / g)));
+	}
+
+	/*
+	 * @returns if the leg is currently down (less than DOWN_ANGLE from horizontal)
+	 */
+	public boolean isDown() {
+		return getAngle() < DOWN_ANGLE;
+	}
+
+	/*
+	 * Set the leg down flag of each movement from the leg angle just before it starts.
+	 * The samples are streamed up to the last movement. Long quiet stretches between
+	 * movements are skipped and the filter is restarted far enough ahead of the next
+	 * movement to settle.
+	 * @param movements the movements in time order
+	 * @param useGyro if the gyroscope is fused into the estimate
+	 * @return a new list with the leg down flags set
+	 */
+	public static List<Movement> tag(SampleStore store, List<Movement> movements, boolean useGyro) {
+		return tag(store, movements, useGyro, DEFAULT_AXIS);
+	}
+
+	/*
+	 * Set the leg down flag of each movement as above, for a sensor mounted with the given
+	 * axis normal to the shin
+	 * @param axis the axis of the sensor normal to the shin (x, y, z in the sensor frame)
+	 * @return a new list with the leg down flags set
+	 */
+	public static List<Movement> tag(SampleStore store, List<Movement> movements, boolean useGyro, double[] axis) {
+		List<Movement> tagged = new ArrayList<Movement>(movements.size());
+		LegAngleEstimator estimator = new LegAngleEstimator(DEFAULT_TIME_CONSTANT, useGyro, axis);
+		long[] time = store.getTimes();
+		float[] ax = store.getAccX(), ay = store.getAccY(), az = store.getAccZ();
+		float[] wx = store.getGyroX(), wy = store.getGyroY(), wz = store.getGyroZ();
+		int size = store.size();
+		long settle = Math.round(SETTLE * DEFAULT_TIME_CONSTANT * 1000);
+		int i = 0;
+		for (Movement m : movements) {
+			long onset = m.getTime().getTime();
+			int from = store.indexOf(onset - settle);
+			if (from > i) {
+				estimator = new LegAngleEstimator(DEFAULT_TIME_CONSTANT, useGyro, axis);
+				i = from;
+			}
+			// Feed everything before the movement starts
+			while (i < size && time[i] < onset) {
+				estimator.accept(time[i], ax[i], ay[i], az[i], wx[i], wy[i], wz[i]);
+				i++;
+			}
+			if (i == 0 && size > 0) {
+				// The movement starts with the recording, use the first reading
+				estimator.accept(time[0], ax[0], ay[0], az[0], wx[0], wy[0], wz[0]);
+				i++;
+			}
+			tagged.add(m.withDown(estimator.isDown()));
+		}
+		return tagged;
+	}
+}
@@ -1,25 +1,103 @@
 import javafx.scene.chart.XYChart;
 import javafx.scene.chart.LineChart;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.ClosePath;
 import javafx.scene.shape.Line;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Objects;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.beans.Observable;
 import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
 import javafx.scene.chart.Axis;
 
+/*
+ * A line chart with horizontal and vertical value markers
+ *
+ * The horizontal markers (the threshold) are a Line each. The vertical markers (the
+ * movement onsets, thousands a night) are kept by time in a sorted map and all drawn
+ * as one Path: a layout only looks at the markers in view and draws at most one line
+ * per pixel, and adding or removing a marker costs O(log n). The vertical markers get
+ * no node of their own.
+ *
+ * The movements can also be shaded as time spans behind the data, one Path per
+ * movement type, only drawn for the spans in view (see EventSpans).
+ */
 @SuppressWarnings("restriction")
 public class LineChartWithMarkers extends LineChart<Date, Number> {
 	private ObservableList<XYChart.Data<Date, Number>> horizontalMarkers;
-    private ObservableList<XYChart.Data<Date, Number>> verticalMarkers;
+    // The vertical markers, and how many of them there are at each time (millis)
+    private final Set<XYChart.Data<Date, Number>> verticalMarkers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final NavigableMap<Long, Integer> verticalTimes = new TreeMap<>();
+    // All of the vertical markers in view
+    private final Path verticalPath = new Path();
+    // The movement spans, with a path per movement type and room for the runs of a layout
+    private EventSpans eventSpans = EventSpans.EMPTY;
+    private final Path[] spanPaths = new Path[EventSpans.TYPES.length];
+    private double[] runs = new double[0];
+    // Keeps verticalTimes up to date when a vertical marker is moved
+    private final ChangeListener<Date> verticalMoved = (observable, oldValue, newValue) -> {
+        removeTime(oldValue);
+        addTime(newValue);
+        requestChartLayout();
+    };
 
     public LineChartWithMarkers(Axis<Date> xAxis, Axis<Number> yAxis) {
         super(xAxis, yAxis);
         horizontalMarkers = FXCollections.observableArrayList(data -> new Observable[] {data.YValueProperty()});
-        horizontalMarkers.addListener((InvalidationListener)observable -> layoutPlotChildren());
-        verticalMarkers = FXCollections.observableArrayList(data -> new Observable[] {data.XValueProperty()});
-        verticalMarkers.addListener((InvalidationListener)observable -> layoutPlotChildren());
+        horizontalMarkers.addListener((InvalidationListener)observable -> requestChartLayout());
+        verticalPath.setFill(null);
+        verticalPath.setStroke(Color.BLACK);
+        verticalPath.setStrokeWidth(1);
+        verticalPath.setManaged(false);
+        getPlotChildren().add(verticalPath);
+        // Behind the series, which are added after
+        for (int i = 0; i < spanPaths.length; i++) {
+            spanPaths[i] = new Path();
+            spanPaths[i].setFill(typeColor(i).deriveColor(0, 1, 1, 0.25));
+            spanPaths[i].setStroke(null);
+            spanPaths[i].setManaged(false);
+            spanPaths[i].setMouseTransparent(true);
+        }
+        getPlotChildren().addAll(0, Arrays.asList(spanPaths));
+    }
+
+    /**
+     * Returns the colour a movement type (index in EventSpans.TYPES) is drawn in:
+     * P red, R gray, I blue, U green.
+     */
+    public static Color typeColor(int type) {
+        switch (type) {
+        case 0:
+            return Color.RED;
+        case 1:
+            return Color.GRAY;
+        case 2:
+            return Color.DODGERBLUE;
+        default:
+            return Color.GREEN;
+        }
+    }
+
+    /**
+     * Shades the time span of each of the given movements, coloured by type.
+     */
+    public void setEventSpans(EventSpans spans) {
+        eventSpans = Objects.requireNonNull(spans, "the spans must not be null");
+        requestChartLayout();
     }
 
     public void addHorizontalValueMarker(XYChart.Data<Date, Number> marker) {
@@ -42,22 +120,60 @@ public class LineChartWithMarkers extends LineChart<Date, Number> {
 
     public void addVerticalValueMarker(XYChart.Data<Date, Number> marker) {
         Objects.requireNonNull(marker, "the marker must not be null");
-        if (verticalMarkers.contains(marker)) return;
-        Line line = new Line();
-        marker.setNode(line );
-        getPlotChildren().add(line);
-        verticalMarkers.add(marker);
+        if (putVertical(marker)) {
+            requestChartLayout();
+        }
     }
 
     public void removeVerticalValueMarker(XYChart.Data<Date, Number> marker) {
         Objects.requireNonNull(marker, "the marker must not be null");
-        if (marker.getNode() != null) {
-            getPlotChildren().remove(marker.getNode());
-            marker.setNode(null);
+        if (verticalMarkers.remove(marker)) {
+            marker.XValueProperty().removeListener(verticalMoved);
+            removeTime(marker.getXValue());
+            requestChartLayout();
         }
-        verticalMarkers.remove(marker);
     }
 
+    /**
+     * Replaces all vertical markers at once, so the chart is only laid out once.
+     */
+    public void setVerticalValueMarkers(List<XYChart.Data<Date, Number>> markers) {
+        Objects.requireNonNull(markers, "the markers must not be null");
+        for (XYChart.Data<Date, Number> marker : verticalMarkers) {
+            marker.XValueProperty().removeListener(verticalMoved);
+        }
+        verticalMarkers.clear();
+        verticalTimes.clear();
+        for (XYChart.Data<Date, Number> marker : markers) {
+            putVertical(marker);
+        }
+        requestChartLayout();
+    }
+
+    /*
+     * Add a vertical marker unless it is already on the chart
+     * @return true if it was added
+     */
+    private boolean putVertical(XYChart.Data<Date, Number> marker) {
+        if (!verticalMarkers.add(marker)) {
+            return false;
+        }
+        marker.XValueProperty().addListener(verticalMoved);
+        addTime(marker.getXValue());
+        return true;
+    }
+
+    private void addTime(Date time) {
+        if (time != null) {
+            verticalTimes.merge(time.getTime(), 1, Integer::sum);
+        }
+    }
+
+    private void removeTime(Date time) {
+        if (time != null) {
+            verticalTimes.computeIfPresent(time.getTime(), (millis, count) -> (count > 1) ? count - 1 : null);
+        }
+    }
 
     @Override
     protected void layoutPlotChildren() {
@@ -70,14 +186,66 @@ public class LineChartWithMarkers extends LineChart<Date, Number> {
             line.setEndY(line.getStartY());
             line.toFront();
         }
-        for (XYChart.Data<Date, Number> verticalMarker : verticalMarkers) {
-            Line line = (Line) verticalMarker.getNode();
-            line.setStartX(getXAxis().getDisplayPosition(verticalMarker.getXValue()) + 0.5);  // 0.5 for crispness
-            line.setEndX(line.getStartX());
-            line.setStartY(0d);
-            line.setEndY(getBoundsInLocal().getHeight());
-            line.toFront();
-        }      
+        layoutVerticalMarkers();
+        layoutEventSpans();
+    }
+
+    /*
+     * Draw the runs of the movement spans in view into the path of their type
+     */
+    private void layoutEventSpans() {
+        Axis<Date> xAxis = getXAxis();
+        double width = xAxis.getWidth();
+        long lower = 0, upper = 0;
+        if (eventSpans.size() > 0 && width > 0) {
+            lower = (long) xAxis.toNumericValue(xAxis.getValueForDisplay(0));
+            upper = (long) xAxis.toNumericValue(xAxis.getValueForDisplay(width));
+            int room = 2 * ((int) Math.ceil(width) + 4);
+            if (runs.length < room) {
+                runs = new double[room];
+            }
+        }
+        double height = getBoundsInLocal().getHeight();
+        for (int type = 0; type < spanPaths.length; type++) {
+            List<PathElement> elements = new ArrayList<>();
+            if (upper > lower) {
+                int n = eventSpans.runs(type, lower, upper, width / (upper - lower), runs);
+                for (int i = 0; i < n; i++) {
+                    double left = runs[2 * i], right = runs[2 * i + 1];
+                    elements.add(new MoveTo(left, 0));
+                    elements.add(new LineTo(right, 0));
+                    elements.add(new LineTo(right, height));
+                    elements.add(new LineTo(left, height));
+                    elements.add(new ClosePath());
+                }
+            }
+            spanPaths[type].getElements().setAll(elements);
+        }
+    }
+
+    /*
+     * Draw the vertical markers in view into the path, one line per pixel at most
+     */
+    private void layoutVerticalMarkers() {
+        List<PathElement> elements = new ArrayList<>();
+        Axis<Date> xAxis = getXAxis();
+        double width = xAxis.getWidth();
+        if (!verticalTimes.isEmpty() && width > 0) {
+            long lower = (long) xAxis.toNumericValue(xAxis.getValueForDisplay(0));
+            long upper = (long) xAxis.toNumericValue(xAxis.getValueForDisplay(width));
+            double height = getBoundsInLocal().getHeight();
+            double lastX = Double.NaN;
+            for (Long millis : verticalTimes.subMap(Math.min(lower, upper), true, Math.max(lower, upper), true).keySet()) {
+                double x = Math.floor(xAxis.getDisplayPosition(new Date(millis))) + 0.5;  // 0.5 for crispness
+                if (x != lastX) {
+                    elements.add(new MoveTo(x, 0));
+                    elements.add(new LineTo(x, height));
+                    lastX = x;
+                }
+            }
+        }
+        verticalPath.getElements().setAll(elements);
+        verticalPath.toFront();
     }
 
 }
@@ -7,14 +7,18 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ChangeListener;
@@ -31,11 +35,19 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Slider;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
@@ -45,15 +57,17 @@ import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.geometry.Point2D;
 import javafx.geometry.VPos;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
 import javafx.collections.*;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.scene.*;
 import javafx.scene.control.Label;
-import javafx.scene.layout.StackPane;
 import javafx.scene.layout.GridPane;
 
 /*
@@ -73,17 +87,54 @@ public class Main extends Application {
 
 	// Threshold value - default to 1.0
 	private double thresholdValue = 1.0;
-	// Data retrieved from csv
+	// Raw samples retrieved from csv
+	private SampleStore store;
+	// Chart points built from the sample store
 	private ObservableList <LineChart.Data<Date, Number>> data;
 	// Movement analysis retrieved from csv
 	private ObservableList <Movement> mov;
 	// How many data points can be seen at a screen at once - default = 5.0
 	private int screenCapacity = 5;
+	// Groups the movements into PLM series
+	private SeriesClassifier classifier = new SeriesClassifier();
+	// Peak index of the accelerometer magnitude, built on the first detection
+	private PeakIndex peaks;
+	// Set if the movements were detected from the raw data (rather than imported)
+	private boolean detected;
+	// Signal filter settings, window lengths in s (0 = stage is off)
+	private double gravityWindow = 0;
+	private double smoothWindow = 0;
+	private boolean medianSmooth = false;
+	private double bandShortWindow = 0, bandLongWindow = 0;
+	// Accelerometer magnitude after the signal filters, computed on first use
+	private float[] filtered;
+	// Min/max pyramid of the (filtered) accelerometer magnitude the chart points are taken from
+	private MinMaxPyramid pyramid;
+	// Time span (epoch millis) the chart points cover, the span in view and the width (pixels) they were reduced for
+	private long viewFrom, viewTo, viewSpan;
+	private int viewWidth;
+	// Part of the span in view that is also bound into the series on either side, so short pans reuse the points
+	private static final double VIEW_MARGIN = 0.5;
+	// Part of the span by which the span in view may change and still reuse the points, as pans round the bounds
+	private static final double VIEW_SPAN_TOLERANCE = 0.01;
+	// Set while a chart point update is waiting on the application thread
+	private boolean viewQueued;
+	// Set while a detection for the dragged threshold is waiting on the application thread
+	private boolean detectQueued;
+	// Samples reduced to one min/max bucket while a file is loading
+	private static final int LOAD_BUCKET = 100;
+	// Samples handed to the chart at a time when a file is loaded from its cache
+	private static final int CACHE_BLOCK = 1 << 20;
 	// Format for dates on x-axis
-	private SimpleDateFormat dateFormat;
-	// Reference to the line chart and its series
-	private LineChartWithMarkers chart;
-	// Reference to the Axes
+	private TimestampCodec timestamps;
+	// The line chart with its series and markers, made once and updated in place
+	private ChartView view;
+	// The time spans of the movements, shaded on both charts
+	private EventSpans spans = EventSpans.EMPTY;
+	// Canvas chart shown in place of the line chart when canvasTrace is set, made on first use
+	private TraceChart trace;
+	private boolean canvasTrace = false;
+	// Reference to the Axes of the chart being shown
 	private DateAxis xAxis;
 	private NumberAxis yAxis;
 	// Reference to the slider GUI object
@@ -98,6 +149,10 @@ public class Main extends Application {
 	private Stage primary;
 	// Dyncamic values for report dialog width and height
 	private int h;
+	// File currently being loaded in the background
+	private Task<?> loadTask;
+	// The threshold sweep running, if any (run apart from the loading tasks, with its progress in its dialog)
+	private Task<?> sweepTask;
 	
 	//private XYChart.Series<Date, Number> threshold;
 	    
@@ -114,43 +169,43 @@ public class Main extends Application {
 		data = FXCollections.observableArrayList();
 		// Store the analyzed movement data in an observable array list
 		mov = FXCollections.observableArrayList();
+		// Keep the movement spans (and the onsets of the canvas trace chart) up to date
+		mov.addListener((InvalidationListener) o -> {
+			spans = new EventSpans(mov);
+			view.setSpans(spans);
+			if (trace != null) {
+				trace.setEvents(spans);
+			}
+		});
 		
 		// Create a vertical box to show the chartsc3
 	    content = new VBox();
 	    
 		// Date Format Year-Month-Day Hour(24):Minute:Second.Milliseconds
-		dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		timestamps = new TimestampCodec();
 		// Create data point text
 		dataPoint = new Text ("Force: ; Time: ");
 		dataPoint.setTextAlignment(TextAlignment.CENTER);
 		dataPoint.setTextOrigin(VPos.CENTER);   
 	    
-	    // Define the axes
-	    xAxis = new DateAxis();
-	    yAxis = new NumberAxis(0, 7, 1);
-	    
-	    // Name the axes
-	    xAxis.setLabel("Time");
-	    yAxis.setLabel("Force (g)");
-	    
-	    // Format the axes
-	    xAxis.setAutoRanging(true);
-	    yAxis.setAutoRanging(true);
-	
-	    //Create the line chart
-	    chart = new LineChartWithMarkers(xAxis, yAxis);
-	    // Set chart title
-	    chart.setTitle("Leg Movement Analysis");
-	    // Hide datepoint symbols
-	    chart.setCreateSymbols(false);
-	    // Hide the chart legend
-	    chart.setLegendVisible(false); 
-	    // Make the horizontal grid lines visible for easier reference
-	    chart.setHorizontalGridLinesVisible(true);
-	    // Turn off animation
-	    chart.setAnimated(false);
-	    // Change the cursor to a crosshair when on the chart
-	    chart.setCursor(Cursor.CROSSHAIR);
+	    // Create the chart, its axes, series and markers once
+	    view = new ChartView(data, thresholdValue);
+	    xAxis = view.getXAxis();
+	    yAxis = view.getYAxis();
+	    // Reduce the samples to the pixels in view
+	    watchView(xAxis);
+	    // Change the data point text when the mouse is moved over the chart
+	    view.getChart().setOnMouseMoved(this::showReadout);
+	    // Dragging the threshold line detects the movements again, letting go redraws the hover nodes
+	    view.thresholdProperty().addListener((ObservableValue<? extends Number> ov, Number oldVal, Number newVal) -> 
+	    		moveThreshold(newVal.doubleValue()));
+	    view.setOnThresholdReleased(() -> {
+	    	// Catch up with the last value first
+	    	redetectMovements();
+	    	if (detected && store != null && store.size() > 0) {
+	    		showAnalysis();
+	    	}
+	    });
 	   
 	    
 	    // Set initial value of average to zero
@@ -182,6 +237,11 @@ public class Main extends Application {
 	    slider.setMax(0);
 	    slider.setValue(0);
 	    slider.setShowTickMarks(true);
+	    slider.setMajorTickUnit(10);
+	    slider.setMinorTickCount(5);
+	    slider.setBlockIncrement(5);
+	    // Change the chart view when the slider is moved
+	    slider.valueProperty().addListener((ObservableValue<? extends Number> ov, Number oldVal, Number newVal) -> moveWindow(newVal.doubleValue()));
 
 	    // Create a borderpane to hold all GUI objects
 	    borderpane = new BorderPane();
@@ -194,8 +254,8 @@ public class Main extends Application {
 	    // Add spacing between the children
 	    content.setSpacing(15.0);
 	    // Add the dataPoint text, the charts, the slider, the table, and the analyze button
-	    content.getChildren().addAll(dataPoint, chart);
-	    VBox.setVgrow(chart, Priority.ALWAYS);
+	    content.getChildren().addAll(dataPoint, view.getChart());
+	    VBox.setVgrow(view.getChart(), Priority.ALWAYS);
 	    
 	    // Add the menu to the top of the GUI
 	    borderpane.setTop(menuBar);
@@ -255,137 +315,15 @@ public class Main extends Application {
 			                new FileChooser.ExtensionFilter("TXT", "*.txt*"));
 				   File openFile =  fileChooser.showOpenDialog(stage);
 				   if (openFile != null && openFile.exists()) { 
-					   // Remove the old chart and slider from the GUI
-					   content.getChildren().remove(chart);
-					   borderpane.getChildren().remove(slider);
-	                	// Extract the data from the csv
+					   // Clear the movements (and so their spans) and fit the chart to the new data as it arrives
+					   mov.clear();
+					   showChart();
+					   view.reset();
+					   slider.setMax(0);
+					   slider.setValue(0);
+					   
+	                	// Extract the data from the csv in the background
 						extractData(openFile);
-						// Define the axes
-					    xAxis = new DateAxis();
-					    yAxis = new NumberAxis(0, 7, 1);
-					    
-					    // Name the axes
-					    xAxis.setLabel("Time");
-					    yAxis.setLabel("Force (g)");
-					    
-					    // Format the axes
-					    xAxis.setAutoRanging(true);
-					    yAxis.setAutoRanging(true);
-					    
-						//Create the line chart
-					    chart = new LineChartWithMarkers(xAxis, yAxis);
-					    // Set chart title
-					    chart.setTitle("Leg Movement Analysis");
-					    // Set node ID
-					    chart.setId("chart");
-					    // Hide datepoint symbols
-					    chart.setCreateSymbols(false);
-					    // Hide the chart legend
-					    chart.setLegendVisible(false); 
-					    // Make the horizontal grid lines visible for easier reference
-					    chart.setHorizontalGridLinesVisible(true);
-					    // Turn off animation
-					    chart.setAnimated(false);
-					    
-					    // Change the data point text when the mouse is moved over the chart
-						chart.setOnMouseMoved(new EventHandler<MouseEvent>() {
-						      @Override public void handle(MouseEvent mouseEvent) {
-						    	  // Create a 2D point for where the mouse is located in the scene
-						    	  Point2D pointInScene = new Point2D(mouseEvent.getSceneX(), mouseEvent.getSceneY());
-						    	  // Calculate what that 2D x-value corresponds to in reference to the x-axis
-						    	  double xPosInAxis = xAxis.sceneToLocal(new Point2D(pointInScene.getX(), 0)).getX();
-						    	  // Calculate what that 2D x-y-value corresponds to in reference to the y-axis
-						    	  double yPosInAxis = yAxis.sceneToLocal(new Point2D(0, pointInScene.getY())).getY();
-						    	  // Get the chart values corresponding to the values at the axes
-						    	  Date x = xAxis.getValueForDisplay(xPosInAxis);
-						    	  double y = yAxis.getValueForDisplay(yPosInAxis).doubleValue();
-						    	    
-						    	  //Format the number to a prettier string
-						    	  NumberFormat numFormat = new DecimalFormat("#0.00");     
-							      // Update the string label on the top of the chart
-						    	  dataPoint.setText("Force: " + numFormat.format(y)
-							          	+ "; Time: " + dateFormat.format(x));
-						      	}
-						});
-
-					    // Add a horizontal marker as a threshold
-					    XYChart.Data<Date, Number> horizontalMarker = new XYChart.Data<Date, Number>(new Date(), thresholdValue);
-				        chart.addHorizontalValueMarker(horizontalMarker);
-				        
-				        // Add a series based off the data
-				        chart.getData().add(new LineChart.Series<Date, Number>("RawData", data));
-
-					    // Change the cursor to a crosshair when on the chart
-					    chart.setCursor(Cursor.CROSSHAIR);	
-					    
-					    // Setup time slider
-					    slider = new Slider();
-					    slider.setMin(0);
-					    slider.setValue(0);
-					    slider.setShowTickMarks(true);
-					    slider.setMajorTickUnit(10);
-					    slider.setMinorTickCount(5);
-					    slider.setBlockIncrement(5);
-					    
-	            		if (chart != null) {
-		            		LineChart.Series<Date, Number> s = (LineChart.Series<Date, Number>) chart.getData().get(0);
-		            		ObservableList<LineChart.Data <Date,Number>> chartData = s.getData();
-		            		// Set the max slider value of the slider
-		            		int max = chartData.size() == 0? 0: chartData.size() - 1;
-		            		slider.setMax(max);
-	            		}
-	            		
-					    // Change the chart view when the slider is moved
-					    slider.valueProperty().addListener((
-				            ObservableValue<? extends Number> ov, 
-				            Number oldVal, Number newVal) -> {
-				            	if (data.size() > 0) {
-				            		// Get an updated reference of the chart on the graph
-				            		LineChart<Date,Number> c = (LineChart<Date,Number>) content.lookup("#chart");
-				            		if (c != null) {
-					            		LineChart.Series<Date, Number> s = (LineChart.Series<Date, Number>) c.getData().get(0);
-					            		ObservableList<LineChart.Data <Date,Number>> chartData = s.getData();
-					            		// Set the max slider value of the slider
-					            		int max = chartData.size() == 0? 0: chartData.size() - 1;
-					            		slider.setMax(max);
-					            		slider.setMin(0);
-					            		
-					            		slider.setFocusTraversable(true);
-					            		
-							            // the upper bound is the value of the slider
-							            int up = (int) Math.round((double)newVal);
-							            // the lower bound is the slider value minus the screen capacity
-							            int low = (int) Math.round((double)newVal) - screenCapacity;
-							            // If the lower bound is less than 0, set it to 0
-							            low = (low < 0)? 0 : low;
-							            // If the lower bound is greater than max - screen capacity,
-							            // set it equal to the max slider value - screen capacity
-							            low = (low > max - screenCapacity)? 
-							            		max - screenCapacity : low;
-							            // If the upper bound, is less than the screen capacity,
-							            // set it to the screen capacity
-							            up = (up < screenCapacity)? screenCapacity : up;
-							
-							            // Get the date values for the bounds
-							            Date upper = chartData.get(up).getXValue();
-							            Date lower = chartData.get(low).getXValue();
-							
-							            // Set the upper and lower bounds of the chart
-							            ((DateAxis)c.getXAxis()).setUpperBound(upper);
-							            ((DateAxis)c.getXAxis()).setLowerBound(lower);
-							            
-							            
-				            		} else {
-				            			System.out.println("Chart is null.");
-				            			
-				            		}
-				            	}
-				        });
-					    
-					    // Add the new chart and slider to the GUI
-						content.getChildren().add(chart);
-						VBox.setVgrow(chart, Priority.ALWAYS);
-						borderpane.setBottom(slider);
 				   	}
 			   }}
 		);
@@ -439,7 +377,6 @@ public class Main extends Application {
 		 // Import Analysis
 		 MenuItem importAnalysis = new MenuItem("Import Analysis File");
 		 importAnalysis.setOnAction(new EventHandler<ActionEvent>() {
-			   @SuppressWarnings("unchecked")
 			public void handle(ActionEvent t) {
 				// Open a file choose dialog to decide which file to open
 				   FileChooser fileChooser = new FileChooser();
@@ -449,141 +386,9 @@ public class Main extends Application {
 						   new FileChooser.ExtensionFilter("TXT", "*.txt*"),
 						   new FileChooser.ExtensionFilter("CSV", "*.csv"));
 				   File analysisFile =  fileChooser.showOpenDialog(stage);
-				   if (analysisFile != null && analysisFile.exists() & !data.isEmpty()) { 
-	                	// Extract the data from the csv
+				   if (analysisFile != null && analysisFile.exists() && store != null && store.size() > 0) { 
+	                	// Extract the movements from the csv in the background
 						extractAnalysis(analysisFile);
-						// Reset chart with extra data nodes
-						// Remove the old chart and slider from the GUI
-					    content.getChildren().remove(chart);
-					    borderpane.getChildren().remove(slider);
-						// Define the axes
-					    xAxis = new DateAxis();
-					    yAxis = new NumberAxis(0, 7, 1);
-					    
-					    // Name the axes
-					    xAxis.setLabel("Time");
-					    yAxis.setLabel("Force (g)");
-					    
-					    // Format the axes
-					    xAxis.setAutoRanging(true);
-					    yAxis.setAutoRanging(true);
-					    
-						//Create the line chart
-					    chart = new LineChartWithMarkers(xAxis, yAxis);
-					    // Set chart title
-					    chart.setTitle("Leg Movement Analysis");
-					    // Set node ID
-					    chart.setId("chart");
-					    // Show datepoint symbols
-					    chart.setCreateSymbols(true);
-					    // Hide the chart legend
-					    chart.setLegendVisible(false); 
-					    // Make the horizontal grid lines visible for easier reference
-					    chart.setHorizontalGridLinesVisible(true);
-					    // Turn off animation
-					    chart.setAnimated(false);
-					    
-					    // Change the data point text when the mouse is moved over the chart
-						chart.setOnMouseMoved(new EventHandler<MouseEvent>() {
-						      @Override public void handle(MouseEvent mouseEvent) {
-						    	  // Create a 2D point for where the mouse is located in the scene
-						    	  Point2D pointInScene = new Point2D(mouseEvent.getSceneX(), mouseEvent.getSceneY());
-						    	  // Calculate what that 2D x-value corresponds to in reference to the x-axis
-						    	  double xPosInAxis = xAxis.sceneToLocal(new Point2D(pointInScene.getX(), 0)).getX();
-						    	  // Calculate what that 2D x-y-value corresponds to in reference to the y-axis
-						    	  double yPosInAxis = yAxis.sceneToLocal(new Point2D(0, pointInScene.getY())).getY();
-						    	  // Get the chart values corresponding to the values at the axes
-						    	  Date x = xAxis.getValueForDisplay(xPosInAxis);
-						    	  double y = yAxis.getValueForDisplay(yPosInAxis).doubleValue();
-						    	    
-						    	  //Format the number to a prettier string
-						    	  NumberFormat numFormat = new DecimalFormat("#0.00");     
-							      // Update the string label on the top of the chart
-						    	  dataPoint.setText("Force: " + numFormat.format(y)
-							          	+ "; Time: " + dateFormat.format(x));
-						      	}
-						});
-
-					    // Add a horizontal marker as a threshold
-					    XYChart.Data<Date, Number> horizontalMarker = new XYChart.Data<Date, Number>(new Date(), thresholdValue);
-				        chart.addHorizontalValueMarker(horizontalMarker);
-				        
-				        // Add a series based off the data
-				        chart.getData().add(new LineChart.Series<Date, Number>(plot()));
-
-					    // Change the cursor to a crosshair when on the chart
-					    chart.setCursor(Cursor.CROSSHAIR);	
-					    // Bring the chart to the front of the scene
-					    chart.toFront();
-					    
-					    // Setup time slider
-					    slider = new Slider();
-					    slider.setMin(0);
-					    slider.setValue(0);
-					    slider.setShowTickMarks(true);
-					    slider.setMajorTickUnit(10);
-					    slider.setMinorTickCount(5);
-					    slider.setBlockIncrement(5);
-					    
-	            		if (chart != null) {
-		            		LineChart.Series<Date, Number> s = (LineChart.Series<Date, Number>) chart.getData().get(0);
-		            		ObservableList<LineChart.Data <Date,Number>> chartData = s.getData();
-		            		// Set the max slider value of the slider
-		            		int max = chartData.size() == 0? 0: chartData.size() - 1;
-		            		slider.setMax(max);
-	            		}
-	            		
-					    // Change the chart view when the slider is moved
-					    slider.valueProperty().addListener((
-				            ObservableValue<? extends Number> ov, 
-				            Number oldVal, Number newVal) -> {
-				            	if (data.size() > 0) {
-				            		// Get an updated reference of the chart on the graph
-				            		LineChart<Date,Number> c = (LineChart<Date,Number>) content.lookup("#chart");
-				            		if (c != null) {
-					            		LineChart.Series<Date, Number> s = (LineChart.Series<Date, Number>) c.getData().get(0);
-					            		ObservableList<LineChart.Data <Date,Number>> chartData = s.getData();
-					            		// Set the max slider value of the slider
-					            		int max = chartData.size() == 0? 0: chartData.size() - 1;
-					            		slider.setMax(max);
-					            		slider.setMin(0);
-					            		
-					            		slider.setFocusTraversable(true);
-					            		
-							            // the upper bound is the value of the slider
-							            int up = (int) Math.round((double)newVal);
-							            // the lower bound is the slider value minus the screen capacity
-							            int low = (int) Math.round((double)newVal) - screenCapacity;
-							            // If the lower bound is less than 0, set it to 0
-							            low = (low < 0)? 0 : low;
-							            // If the lower bound is greater than max - screen capacity,
-							            // set it equal to the max slider value - screen capacity
-							            low = (low > max - screenCapacity)? 
-							            		max - screenCapacity : low;
-							            // If the upper bound, is less than the screen capacity,
-							            // set it to the screen capacity
-							            up = (up < screenCapacity)? screenCapacity : up;
-							
-							            // Get the date values for the bounds
-							            Date upper = chartData.get(up).getXValue();
-							            Date lower = chartData.get(low).getXValue();
-							
-							            // Set the upper and lower bounds of the chart
-							            ((DateAxis)c.getXAxis()).setUpperBound(upper);
-							            ((DateAxis)c.getXAxis()).setLowerBound(lower);
-							            
-							            
-				            		} else {
-				            			System.out.println("Chart is null.");
-				            			
-				            		}
-				            	}
-				        });
-					    
-					    // Add the new chart and slider to the GUI
-						content.getChildren().add(chart);
-						VBox.setVgrow(chart, Priority.ALWAYS);
-						borderpane.setBottom(slider);
 				   	}
 			   }
 		 });
@@ -591,6 +396,21 @@ public class Main extends Application {
 		 // Ctrl + I to open the import
 		 importAnalysis.setAccelerator(new KeyCodeCombination(KeyCode.I, KeyCombination.CONTROL_DOWN));
 		 
+		 // Detect Movements
+		 MenuItem detect = new MenuItem("Detect Movements");
+		 detect.setOnAction(new EventHandler<ActionEvent>() {
+			   public void handle(ActionEvent t) {
+				   if (store != null && store.size() > 0) {
+					   // Find the movements in the raw data and show them like an imported analysis
+					   detectMovements();
+					   showAnalysis();
+				   }
+			   }
+		 });
+		 file.getItems().add(detect);
+		 // Ctrl + M to detect the movements
+		 detect.setAccelerator(new KeyCodeCombination(KeyCode.M, KeyCombination.CONTROL_DOWN));
+		 
 		 // Exit
 		 MenuItem exit = new MenuItem("Exit");
 		 exit.setOnAction(new EventHandler<ActionEvent>() {
@@ -603,6 +423,177 @@ public class Main extends Application {
 		 exit.setAccelerator(new KeyCodeCombination(KeyCode.Q, KeyCombination.CONTROL_DOWN));
 	 }
 	
+	/**
+	 * Show a hover node for each imported or detected movement on the chart
+	 */
+	private void showAnalysis() {
+		if (canvasTrace) {
+			// The canvas trace chart draws the movements itself
+			showTrace();
+			return;
+		}
+		showChart();
+		plot();
+		// Set the max slider value of the slider
+		slider.setMax(store.size() == 0? 0: store.size() - 1);
+		// Mark the start of the detected movements
+		if (detected) {
+			showOnsets();
+		} else {
+			view.setOnsets(new ArrayList<Date>());
+		}
+	}
+	
+	/*
+	 * Show the line chart, if the canvas trace chart is in its place
+	 */
+	private void showChart() {
+		if (!content.getChildren().contains(view.getChart())) {
+			content.getChildren().remove(trace);
+			content.getChildren().add(view.getChart());
+			VBox.setVgrow(view.getChart(), Priority.ALWAYS);
+			xAxis = view.getXAxis();
+			yAxis = view.getYAxis();
+			view.thresholdProperty().set(thresholdValue);
+			// The view may have moved while the trace chart was shown
+			requestView();
+		}
+	}
+	
+	/*
+	 * Move the threshold to a new value while its line is dragged (on either chart).
+	 * If the movements were detected, they are detected again as it moves.
+	 */
+	private void moveThreshold(double value) {
+		if (value == thresholdValue) {
+			return;
+		}
+		thresholdValue = value;
+		dataPoint.setText("Threshold: " + new DecimalFormat("#0.00").format(value));
+		// The drag fires many times a pulse, the movements are only detected once for the last value
+		if (!detectQueued) {
+			detectQueued = true;
+			Platform.runLater(this::redetectMovements);
+		}
+	}
+	
+	/*
+	 * Detect the movements again at the current threshold if a detection is waiting.
+	 * Only the movements and their markers are updated, as the threshold may still be moving.
+	 */
+	private void redetectMovements() {
+		if (!detectQueued) {
+			return;
+		}
+		detectQueued = false;
+		if (detected && store != null && store.size() > 0) {
+			detectMovements();
+			if (!canvasTrace) {
+				showOnsets();
+			}
+		}
+	}
+	
+	/*
+	 * Show the recording in a canvas trace chart in place of the line chart.
+	 * The threshold and the movement onsets are drawn by the trace chart itself.
+	 */
+	private void showTrace() {
+		if (trace == null) {
+			// Define the axes
+		    DateAxis x = new DateAxis();
+		    NumberAxis y = new NumberAxis(0, 7, 1);
+		    x.setLabel("Time");
+		    y.setLabel("Force (g)");
+		    
+			trace = new TraceChart(x, y);
+			trace.setId("trace");
+			// Change the data point text when the mouse is moved over the chart
+			trace.setOnMouseMoved(this::showReadout);
+			// Dragging the threshold line detects the movements again
+			trace.thresholdProperty().addListener((ObservableValue<? extends Number> ov, Number oldVal, Number newVal) -> 
+					moveThreshold(newVal.doubleValue()));
+		}
+		if (trace.getPyramid() != pyramid()) {
+			// A new recording or new filters
+			trace.setTrace(store.getTimes(), pyramid());
+		}
+		trace.setThreshold(thresholdValue);
+		trace.setEvents(spans);
+		if (!content.getChildren().contains(trace)) {
+			content.getChildren().remove(view.getChart());
+			content.getChildren().add(trace);
+			VBox.setVgrow(trace, Priority.ALWAYS);
+			xAxis = trace.getXAxis();
+			yAxis = trace.getYAxis();
+		}
+	}
+	
+	/*
+	 * Show the force and time under the mouse above the chart
+	 */
+	private void showReadout(MouseEvent mouseEvent) {
+		// Create a 2D point for where the mouse is located in the scene
+		Point2D pointInScene = new Point2D(mouseEvent.getSceneX(), mouseEvent.getSceneY());
+		// Calculate what that 2D x-value corresponds to in reference to the x-axis
+		double xPosInAxis = xAxis.sceneToLocal(new Point2D(pointInScene.getX(), 0)).getX();
+		// Calculate what that 2D x-y-value corresponds to in reference to the y-axis
+		double yPosInAxis = yAxis.sceneToLocal(new Point2D(0, pointInScene.getY())).getY();
+		// Get the chart values corresponding to the values at the axes
+		Date x = xAxis.getValueForDisplay(xPosInAxis);
+		double y = yAxis.getValueForDisplay(yPosInAxis).doubleValue();
+		
+		//Format the number to a prettier string
+		NumberFormat numFormat = new DecimalFormat("#0.00");     
+		// Update the string label on the top of the chart
+		dataPoint.setText("Force: " + numFormat.format(y)
+				+ "; Time: " + timestamps.format(x));
+	}
+	
+	/*
+	 * Move the view of the chart to the screen capacity of samples ending at the given sample
+	 * @param value the slider value (sample index)
+	 */
+	private void moveWindow(double value) {
+		if (store == null || store.size() == 0 || xAxis == null) {
+			return;
+		}
+		// Set the max slider value of the slider
+		int max = store.size() - 1;
+		slider.setMax(max);
+		slider.setMin(0);
+		slider.setFocusTraversable(true);
+		
+		// the upper bound is the value of the slider
+		int up = (int) Math.round(value);
+		// the lower bound is the slider value minus the screen capacity
+		int low = (int) Math.round(value) - screenCapacity;
+		// If the lower bound is greater than max - screen capacity,
+		// set it equal to the max slider value - screen capacity
+		low = (low > max - screenCapacity)? max - screenCapacity : low;
+		// If the lower bound is less than 0, set it to 0
+		low = (low < 0)? 0 : low;
+		// If the upper bound, is less than the screen capacity,
+		// set it to the screen capacity
+		up = (up < screenCapacity)? screenCapacity : up;
+		up = (up > max)? max : up;
+		
+		// Set the upper and lower bounds of the chart (which stops it auto ranging), the series is swapped for the points in view
+		xAxis.setUpperBound(new Date(store.getTime(up)));
+		xAxis.setLowerBound(new Date(store.getTime(low)));
+	}
+	
+	/*
+	 * Mark the start of each movement with a vertical line on the chart
+	 */
+	private void showOnsets() {
+		List<Date> onsets = new ArrayList<Date>(mov.size());
+		for (Movement m : mov) {
+			onsets.add(m.getTime());
+		}
+		view.setOnsets(onsets);
+	}
+	
 	  /**
 	   * Initialize Menu Items for the paramSetup menu
 	   */
@@ -669,7 +660,7 @@ public class Main extends Application {
 	  	        ymaxText.setPrefWidth(50);
 	  	        
 	  	        // Create a slider for the screen capacity
-	  	        Slider cap = new Slider(1, data.size(), screenCapacity);
+	  	        Slider cap = new Slider(1, (store != null)? store.size() : 1, screenCapacity);
 	  	    	cap.setShowTickMarks(true);
 	  	    	cap.setShowTickLabels(true);
 	  	    	cap.setMajorTickUnit(5.0f);
@@ -689,6 +680,10 @@ public class Main extends Application {
 	  	        }
 	  	        });
 	  	        capText.setPrefWidth(50);
+	  	        
+	  	        // The canvas trace chart only draws what is in view, for long recordings
+	  	        CheckBox canvas = new CheckBox();
+	  	        canvas.setSelected(canvasTrace);
 	  
 	  	        // Add the components to the grid of the dialog box
 	  	    	grid.add(new Label("Min Force Displayed on Chart:"), 0, 0);
@@ -700,6 +695,8 @@ public class Main extends Application {
 	  	    	grid.add(new Label("Data Points Shown on Screen:"), 0, 2);
 	  	    	grid.add(cap, 1, 2);
 	  	    	grid.add(capText, 2, 2);
+	  	    	grid.add(new Label("Draw the Trace on a Canvas:"), 0, 3);
+	  	    	grid.add(canvas, 1, 3);
 
 	  	    	dialog.getDialogPane().setContent(grid);
 
@@ -710,54 +707,33 @@ public class Main extends Application {
 	  	    	    	res.add(ymin.getValue());
 	  	    	    	res.add(ymax.getValue());
 	  	    	    	res.add(Math.round(cap.getValue()));
+	  	    	    	res.add(canvas.isSelected());
 	  	    	        return res;
 	  	    	    }
 	  	    	    return null;
 	  	    	});
 
 	  	    	dialog.showAndWait().ifPresent(res -> {
-	  	    	     if (res != null && !res.isEmpty()) {
-	  	    	        // Get an updated reference of the chart on the graph
-	            		LineChart<Date,Number> c = (LineChart<Date,Number>) content.lookup("#chart");
-	  	    	        if (c != null) {
-		            		// Set the upper and lower bounds of the chart
-	  	    	        	// Y Axis
-	  	    	        	NumberAxis y = ((NumberAxis)c.getYAxis());
-	  	    	        	y.setAutoRanging(false);
-				            y.setUpperBound((double) res.get(1));
-				            y.setLowerBound((double) res.get(0));
-				            // X Axis
-				            //Set the screen capacity
-				            screenCapacity = ((Long)res.get(2)).intValue();
-				            // Get references to the series on the chart and its data
-				            LineChart.Series<Date, Number> s = (LineChart.Series<Date, Number>) c.getData().get(0);
-		            		ObservableList<LineChart.Data <Date,Number>> chartData = s.getData();
-		            		// Set the max slider value of the slider
-		            		int max = chartData.size() == 0? 0: chartData.size() - 1;
-		            		double newVal = chartData.size() - 1;
-				            // the upper bound is the max point
-				            int up = (int) Math.round(newVal);
-				            // the lower bound is the max point value minus the screen capacity
-				            int low = (int) Math.round(newVal) - screenCapacity;
-				            // If the lower bound is less than 0, set it to 0
-				            low = (low < 0)? 0 : low;
-				            // If the lower bound is greater than max - screen capacity,
-				            // set it equal to the max slider value - screen capacity
-				            low = (low > max - screenCapacity)? 
-				            		max - screenCapacity : low;
-				            // If the upper bound, is less than the screen capacity,
-				            // set it to the screen capacity
-				            up = (up < screenCapacity)? screenCapacity : up;
-				
-				            // Get the date values for the bounds
-				            Date upper = chartData.get(up).getXValue();
-				            Date lower = chartData.get(low).getXValue();
-				
-				            // Set the upper and lower bounds of the chart
-				            ((DateAxis)c.getXAxis()).setUpperBound(upper);
-				            ((DateAxis)c.getXAxis()).setLowerBound(lower);
-				            
-	  	    	        }
+	  	    	     if (res != null && !res.isEmpty() && store != null && store.size() > 0) {
+	  	    	    	 if ((boolean) res.get(3) != canvasTrace) {
+	  	    	    		 // Swap the line chart and the canvas trace chart
+	  	    	    		 canvasTrace = (boolean) res.get(3);
+	  	    	    		 if (canvasTrace) {
+	  	    	    			 showTrace();
+	  	    	    		 } else {
+	  	    	    			 showAnalysis();
+	  	    	    		 }
+	  	    	    	 }
+	            		// Set the upper and lower bounds of the chart
+	  	    	        // Y Axis
+	  	    	        yAxis.setAutoRanging(false);
+			            yAxis.setUpperBound((double) res.get(1));
+			            yAxis.setLowerBound((double) res.get(0));
+			            // X Axis
+			            //Set the screen capacity
+			            screenCapacity = ((Long)res.get(2)).intValue();
+			            // Show the last screen of samples
+			            moveWindow(store.size() - 1);
 	  	    	     }
 	  	    	 });
 	  	     }
@@ -765,6 +741,191 @@ public class Main extends Application {
 	  	 paramSetup.getItems().add(disp);
 	  	 //Setup Ctrl+D to activate display parameters
 	  	 disp.setAccelerator(new KeyCodeCombination(KeyCode.D, KeyCombination.CONTROL_DOWN));
+	  	 
+	  	 // PLM Series Parameters
+	  	 MenuItem series = new MenuItem("Set PLM Series Parameters");
+	  	 series.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+	  	    	// Open a dialog to allow the user to set the series parameters
+	  	    	// Paramters = min series length, min interval, max interval
+	  	    	// The movements are relabelled as the sliders move so open reports update live
+	  	    	Dialog<ButtonType> dialog = new Dialog<>();
+	  	    	dialog.initModality(Modality.NONE);
+	  	    	dialog.initOwner(primary);
+	  	    	dialog.setTitle("PLM Series Setup Dialog");
+	  	    	dialog.setHeaderText("Adjust how movements are grouped into PLM series.");
+
+	  	    	// Set the button types.
+	  	    	dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+	  	    	GridPane grid = new GridPane();
+	  	    	grid.setHgap(10);
+	  	    	grid.setVgap(10);
+	  	    	grid.setPadding(new Insets(20, 50, 10, 10));
+
+	  	    	// Create sliders for the series parameters
+	  	    	Slider length = new Slider(1, 10, classifier.getMinSeriesLength());
+	  	    	length.setShowTickMarks(true);
+	  	    	length.setShowTickLabels(true);
+	  	    	length.setMajorTickUnit(1.0f);
+	  	    	length.setMinorTickCount(0);
+	  	    	length.setSnapToTicks(true);
+	  	    	length.setPrefWidth(300);
+	  	    	Slider minInterval = new Slider(0, 30, classifier.getMinInterval());
+	  	    	minInterval.setShowTickMarks(true);
+	  	    	minInterval.setShowTickLabels(true);
+	  	    	minInterval.setMajorTickUnit(5.0f);
+	  	    	minInterval.setPrefWidth(300);
+	  	    	Slider maxInterval = new Slider(10, 180, classifier.getMaxInterval());
+	  	    	maxInterval.setShowTickMarks(true);
+	  	    	maxInterval.setShowTickLabels(true);
+	  	    	maxInterval.setMajorTickUnit(30.0f);
+	  	    	maxInterval.setPrefWidth(300);
+
+	  	    	final Label lengthText = new Label();
+	  	    	final Label minIntervalText = new Label();
+	  	    	final Label maxIntervalText = new Label();
+	  	    	lengthText.setPrefWidth(50);
+	  	    	minIntervalText.setPrefWidth(50);
+	  	    	maxIntervalText.setPrefWidth(50);
+
+	  	    	// Keep the old parameters and labels in case the dialog is cancelled
+	  	    	// (the labels of an imported analysis are the file's own, not the classifier's)
+	  	    	final SeriesClassifier previous = classifier;
+	  	    	final List<Movement> before = new ArrayList<Movement>(mov);
+	  	    	// Update the labels and relabel the movements whenever a slider moves
+	  	    	ChangeListener<Number> update = (ObservableValue<? extends Number> ov, Number oldVal, Number newVal) -> {
+	  	    		int len = (int) Math.round(length.getValue());
+	  	    		lengthText.setText(len + "");
+	  	    		minIntervalText.setText(String.format("%.1f s", minInterval.getValue()));
+	  	    		maxIntervalText.setText(String.format("%.1f s", maxInterval.getValue()));
+	  	    		classifier = new SeriesClassifier(len, minInterval.getValue(), maxInterval.getValue());
+	  	    		classifyMovements();
+	  	    	};
+	  	    	length.valueProperty().addListener(update);
+	  	    	minInterval.valueProperty().addListener(update);
+	  	    	maxInterval.valueProperty().addListener(update);
+	  	    	lengthText.setText(classifier.getMinSeriesLength() + "");
+	  	    	minIntervalText.setText(String.format("%.1f s", classifier.getMinInterval()));
+	  	    	maxIntervalText.setText(String.format("%.1f s", classifier.getMaxInterval()));
+
+	  	    	// Add the components to the grid of the dialog box
+	  	    	grid.add(new Label("Min Movements in a Series:"), 0, 0);
+	  	    	grid.add(length, 1, 0);
+	  	    	grid.add(lengthText, 2, 0);
+	  	    	grid.add(new Label("Min Interval Between Movements:"), 0, 1);
+	  	    	grid.add(minInterval, 1, 1);
+	  	    	grid.add(minIntervalText, 2, 1);
+	  	    	grid.add(new Label("Max Interval Between Movements:"), 0, 2);
+	  	    	grid.add(maxInterval, 1, 2);
+	  	    	grid.add(maxIntervalText, 2, 2);
+
+	  	    	dialog.getDialogPane().setContent(grid);
+
+	  	    	dialog.showAndWait().ifPresent(res -> {
+	  	    		if (res == ButtonType.OK) {
+	  	    			// Redraw the hover nodes with the new labels
+	  	    			if (store != null && store.size() > 0 && !mov.isEmpty()) {
+	  	    				showAnalysis();
+	  	    			}
+	  	    		} else if (classifier != previous) {
+	  	    			// Put the old parameters and labels back
+	  	    			classifier = previous;
+	  	    			mov.setAll(before);
+	  	    		}
+	  	    	});
+	  	     }
+	  	 });
+	  	 paramSetup.getItems().add(series);
+	  	 //Setup Ctrl+L to activate the series parameters
+	  	 series.setAccelerator(new KeyCodeCombination(KeyCode.L, KeyCombination.CONTROL_DOWN));
+	  	 
+	  	 // Signal Filters
+	  	 MenuItem filters = new MenuItem("Set Signal Filters");
+	  	 filters.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+	  	    	// Open a dialog to choose the filter stages between the raw data and the chart and detection
+	  	    	Dialog<ButtonType> dialog = new Dialog<>();
+	  	    	dialog.setTitle("Signal Filter Dialog");
+	  	    	dialog.setHeaderText("Choose the filters applied to the accelerometer magnitude.");
+	  	    	dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+	  	    	GridPane grid = new GridPane();
+	  	    	grid.setHgap(10);
+	  	    	grid.setVgap(10);
+	  	    	grid.setPadding(new Insets(20, 50, 10, 10));
+
+	  	    	// A check box and window lengths (s) per stage
+	  	    	CheckBox gravity = new CheckBox("Remove Gravity (High-Pass)");
+	  	    	gravity.setSelected(gravityWindow > 0);
+	  	    	TextField gravityText = new TextField((gravityWindow > 0)? gravityWindow + "" : "2.0");
+	  	    	CheckBox band = new CheckBox("Band-Pass");
+	  	    	band.setSelected(bandLongWindow > 0);
+	  	    	TextField bandShortText = new TextField((bandLongWindow > 0)? bandShortWindow + "" : "0.05");
+	  	    	TextField bandLongText = new TextField((bandLongWindow > 0)? bandLongWindow + "" : "2.0");
+	  	    	CheckBox smooth = new CheckBox("Smooth");
+	  	    	smooth.setSelected(smoothWindow > 0);
+	  	    	ChoiceBox<String> smoothType = new ChoiceBox<String>(FXCollections.observableArrayList("Moving Average", "Median"));
+	  	    	smoothType.setValue(medianSmooth? "Median" : "Moving Average");
+	  	    	TextField smoothText = new TextField((smoothWindow > 0)? smoothWindow + "" : "0.1");
+	  	    	gravityText.setPrefWidth(60);
+	  	    	bandShortText.setPrefWidth(60);
+	  	    	bandLongText.setPrefWidth(60);
+	  	    	smoothText.setPrefWidth(60);
+
+	  	    	// Add the components to the grid of the dialog box
+	  	    	grid.add(gravity, 0, 0);
+	  	    	grid.add(new HBox(10, new Label("Window (s):"), gravityText), 1, 0);
+	  	    	grid.add(band, 0, 1);
+	  	    	grid.add(new HBox(10, new Label("From (s):"), bandShortText, new Label("To (s):"), bandLongText), 1, 1);
+	  	    	grid.add(smooth, 0, 2);
+	  	    	grid.add(new HBox(10, smoothType, new Label("Window (s):"), smoothText), 1, 2);
+	  	    	dialog.getDialogPane().setContent(grid);
+
+	  	    	dialog.showAndWait().ifPresent(res -> {
+	  	    		if (res != ButtonType.OK) {
+	  	    			return;
+	  	    		}
+	  	    		try {
+	  	    			double g = gravity.isSelected()? Double.parseDouble(gravityText.getText().trim()) : 0;
+	  	    			double bs = band.isSelected()? Double.parseDouble(bandShortText.getText().trim()) : 0;
+	  	    			double bl = band.isSelected()? Double.parseDouble(bandLongText.getText().trim()) : 0;
+	  	    			double s = smooth.isSelected()? Double.parseDouble(smoothText.getText().trim()) : 0;
+	  	    			if (g < 0 || s < 0 || bs < 0 || (band.isSelected() && bs >= bl)) {
+	  	    				throw new IllegalArgumentException("Window lengths must be positive and the band-pass must go from the shorter to the longer window");
+	  	    			}
+	  	    			gravityWindow = g;
+	  	    			bandShortWindow = bs;
+	  	    			bandLongWindow = bl;
+	  	    			smoothWindow = s;
+	  	    			medianSmooth = smoothType.getValue().equals("Median");
+	  	    		} catch (IllegalArgumentException e) {
+	  	    			// NumberFormatException is an IllegalArgumentException too
+	  	    			Alert alert = new Alert(AlertType.ERROR);
+	  	    			alert.setTitle("Error: Signal Filter Error");
+	  	    			alert.setHeaderText("The filter settings are not valid");
+	  	    			alert.setContentText(e.getMessage());
+	  	    			alert.showAndWait();
+	  	    			return;
+	  	    		}
+	  	    		if (store != null && store.size() > 0) {
+	  	    			// Filter the recording again and update the chart and the movements
+	  	    			filtered = null;
+	  	    			peaks = null;
+	  	    			pyramid = null;
+	  	    			viewWidth = 0;
+	  	    			updateView();
+	  	    			if (detected) {
+	  	    				detectMovements();
+	  	    				showAnalysis();
+	  	    			}
+	  	    		}
+	  	    	});
+	  	     }
+	  	 });
+	  	 paramSetup.getItems().add(filters);
+	  	 //Setup Ctrl+F to activate the signal filters
+	  	 filters.setAccelerator(new KeyCodeCombination(KeyCode.F, KeyCombination.CONTROL_DOWN));
 	   }
 	   
    /**
@@ -803,6 +964,8 @@ public class Main extends Application {
 		  	    	List<Label> nightText = new ArrayList<Label>();
 		  	    	List<List<DateTimePicker>> sleepTimes = new ArrayList<List<DateTimePicker>>();
 		  	    	List<Label> ephNightText = new ArrayList<Label>();
+		  	    	// The time period of each night whose events per hour are shown
+		  	    	List<Date[]> spans = new ArrayList<Date[]>();
 		  	    	List<Button> buttons = new ArrayList<Button>();
 		  	    	
 		  	    	// Add night button
@@ -820,6 +983,7 @@ public class Main extends Application {
 			  	        sleepTimes.get(night).add(1, new DateTimePicker());	
 			  	        // Add EPH text
 			  	        ephNightText.add(night, new Label("Events Per Hour: "));
+			  	        spans.add(night, null);
 			  	        // Button View Chart
 			  	        buttons.add(night, new Button ("View Chart"));
 				  	    buttons.get(night).setOnAction(new EventHandler<ActionEvent>() {
@@ -879,6 +1043,7 @@ public class Main extends Application {
 								
 								// Update the eph label
 								ephNightText.get(n).setText("Events Per Hour: " + calculateEPH(start, end));
+								spans.set(n, new Date[] {start, end});
 							    
 								// Create a new chart
 				  	        	LineChartWithMarkers charts = new LineChartWithMarkers(x, y);
@@ -894,8 +1059,11 @@ public class Main extends Application {
 							    // Turn off animation
 							    charts.setAnimated(false);
 	
-						        // Add a series based off the data
-							    charts.setData(chart.getData());
+						        // Add a series with the samples of the night
+							    if (store != null) {
+							    	charts.getData().add(new LineChart.Series<Date, Number>("Night",
+							    			FXCollections.observableArrayList(viewData(start.getTime(), end.getTime(), 1000))));
+							    }
 						   	    // Change the cursor to a crosshair when on the chart
 							    charts.setCursor(Cursor.CROSSHAIR);	
 							    // Bring the chart to the front of the scene
@@ -926,13 +1094,264 @@ public class Main extends Application {
 		  	    	grid.add(addNight, 0, 0);
 		  	    	
 		  	    	dialog.getDialogPane().setContent(grid);
+		  	    	
+		  	    	// Recalculate the shown events per hour whenever the movements are relabelled
+		  	    	ListChangeListener<Movement> relabel = change -> {
+		  	    		for (int n = 0; n < spans.size(); n++) {
+		  	    			if (spans.get(n) != null) {
+		  	    				ephNightText.get(n).setText("Events Per Hour: " + calculateEPH(spans.get(n)[0], spans.get(n)[1]));
+		  	    			}
+		  	    		}
+		  	    	};
+		  	    	mov.addListener(relabel);
 		  	    	dialog.showAndWait();
+		  	    	mov.removeListener(relabel);
 		  	    	
 	  	     }
 	  	 });
 	  	 reports.getItems().add(setSleep);
 	  	 //Setup Ctrl+P to activate setPLM
 	  	 setSleep.setAccelerator(new KeyCodeCombination(KeyCode.P, KeyCombination.CONTROL_DOWN));
+	  	 
+	  	 // Threshold Sweep
+	  	 MenuItem sweep = new MenuItem("Threshold Sweep");
+	  	 sweep.setOnAction(new EventHandler<ActionEvent>() {
+	  	     public void handle(ActionEvent t) {
+	  	    	// Open a dialog that shows the events per hour over a grid of detection settings
+	  	    	Dialog<Void> dialog = new Dialog<>();
+	  	    	dialog.initModality(Modality.NONE);
+	  	    	dialog.initOwner(primary);
+	  	    	dialog.setTitle("Threshold Sweep");
+	  	    	dialog.setHeaderText("Compare the events per hour for a range of thresholds and minimum durations.");
+	  	    	dialog.getDialogPane().getButtonTypes().addAll(ButtonType.CLOSE);
+
+	  	    	GridPane grid = new GridPane();
+	  	    	grid.setHgap(10);
+	  	    	grid.setVgap(10);
+	  	    	grid.setPadding(new Insets(20, 50, 10, 10));
+
+	  	    	// Text fields for the grid of settings
+	  	    	TextField from = new TextField("0.5");
+	  	    	TextField to = new TextField("3.0");
+	  	    	TextField step = new TextField("0.1");
+	  	    	TextField durations = new TextField("0.5, 1.0, 2.0");
+	  	    	from.setPrefWidth(60);
+	  	    	to.setPrefWidth(60);
+	  	    	step.setPrefWidth(60);
+	  	    	Button run = new Button("Run Sweep");
+	  	    	// Progress of the sweep running from this dialog
+	  	    	ProgressBar progress = new ProgressBar(0);
+	  	    	progress.setPrefWidth(200);
+	  	    	Button cancel = new Button("Cancel");
+	  	    	cancel.setDisable(true);
+
+	  	    	// Table of the results
+	  	    	TableView<ThresholdSweep.Result> table = new TableView<ThresholdSweep.Result>();
+	  	    	table.getColumns().add(sweepColumn("Threshold (g)", "threshold"));
+	  	    	table.getColumns().add(sweepColumn("Min Duration (s)", "minDuration"));
+	  	    	table.getColumns().add(sweepColumn("Movements", "movements"));
+	  	    	table.getColumns().add(sweepColumn("PLMs", "plms"));
+	  	    	table.getColumns().add(sweepColumn("Events Per Hour", "eph"));
+	  	    	table.setPrefHeight(250);
+
+	  	    	// Chart of the events per hour against the threshold, a line per minimum duration
+	  	    	NumberAxis x = new NumberAxis();
+	  	    	NumberAxis y = new NumberAxis();
+	  	    	x.setLabel("Threshold (g)");
+	  	    	y.setLabel("Events Per Hour");
+	  	    	x.setForceZeroInRange(false);
+	  	    	LineChart<Number, Number> plot = new LineChart<Number, Number>(x, y);
+	  	    	plot.setCreateSymbols(false);
+	  	    	plot.setAnimated(false);
+	  	    	plot.setPrefHeight(300);
+
+	  	    	run.setOnAction(new EventHandler<ActionEvent>() {
+	  	    		public void handle(ActionEvent event) {
+	  	    			if (store == null || store.size() == 0) {
+	  	    				return;
+	  	    			}
+	  	    			ThresholdSweep sweeper;
+	  	    			try {
+	  	    				String[] parts = durations.getText().split(",");
+	  	    				double[] mins = new double[parts.length];
+	  	    				for (int i = 0; i < parts.length; i++) {
+	  	    					mins[i] = Double.parseDouble(parts[i].trim());
+	  	    				}
+	  	    				sweeper = new ThresholdSweep(ThresholdSweep.range(Double.parseDouble(from.getText().trim()),
+	  	    						Double.parseDouble(to.getText().trim()), Double.parseDouble(step.getText().trim())),
+	  	    						mins, classifier);
+	  	    			} catch (IllegalArgumentException e) {
+	  	    				// NumberFormatException is an IllegalArgumentException too
+	  	    				Alert alert = new Alert(AlertType.ERROR);
+	  	    				alert.setTitle("Error: Sweep Settings Error");
+	  	    				alert.setHeaderText("The sweep settings are not valid");
+	  	    				alert.setContentText(e.getMessage());
+	  	    				alert.showAndWait();
+	  	    				return;
+	  	    			}
+	  	    			PeakIndex index = peakIndex();
+	  	    			long[] times = store.getTimes();
+	  	    			Task<List<ThresholdSweep.Result>> task = new Task<List<ThresholdSweep.Result>>() {
+	  	    				@Override protected List<ThresholdSweep.Result> call() throws Exception {
+	  	    					updateMessage("Sweeping " + sweeper.size() + " settings");
+	  	    					// The slices stop once the task is cancelled
+	  	    					return sweeper.run(times, index, ForkJoinPool.commonPool(), this::isCancelled,
+	  	    							done -> updateProgress(done, sweeper.size()));
+	  	    				}
+	  	    			};
+	  	    			progress.progressProperty().bind(task.progressProperty());
+	  	    			run.setDisable(true);
+	  	    			cancel.setDisable(false);
+	  	    			cancel.setOnAction(e -> task.cancel());
+	  	    			// Give the buttons back once the sweep is over
+	  	    			EventHandler<WorkerStateEvent> done = e -> {
+	  	    				run.setDisable(false);
+	  	    				cancel.setDisable(true);
+	  	    			};
+	  	    			task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, done);
+	  	    			task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, done);
+	  	    			task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, done);
+	  	    			task.setOnSucceeded(e -> {
+	  	    				table.getItems().setAll(task.getValue());
+	  	    				plot.getData().clear();
+	  	    				for (ThresholdSweep.Result r : task.getValue()) {
+	  	    					XYChart.Series<Number, Number> line = null;
+	  	    					String name = "Min Duration " + r.getMinDuration() + " s";
+	  	    					for (XYChart.Series<Number, Number> series : plot.getData()) {
+	  	    						if (series.getName().equals(name)) {
+	  	    							line = series;
+	  	    						}
+	  	    					}
+	  	    					if (line == null) {
+	  	    						line = new XYChart.Series<Number, Number>();
+	  	    						line.setName(name);
+	  	    						plot.getData().add(line);
+	  	    					}
+	  	    					line.getData().add(new XYChart.Data<Number, Number>(r.getThreshold(), r.getEph()));
+	  	    				}
+	  	    			});
+	  	    			runSweepTask(task);
+	  	    		}
+	  	    	});
+	  	    	// Stop a sweep still running when the dialog is closed
+	  	    	dialog.setOnHidden(e -> {
+	  	    		if (sweepTask != null && sweepTask.isRunning()) {
+	  	    			sweepTask.cancel();
+	  	    		}
+	  	    	});
+
+	  	    	// Add the components to the grid of the dialog box
+	  	    	grid.add(new Label("Thresholds (g) From:"), 0, 0);
+	  	    	grid.add(new HBox(10, from, new Label("To:"), to, new Label("Step:"), step), 1, 0);
+	  	    	grid.add(new Label("Min Durations (s):"), 0, 1);
+	  	    	grid.add(durations, 1, 1);
+	  	    	grid.add(new HBox(10, run, progress, cancel), 1, 2);
+	  	    	grid.add(table, 0, 3, 2, 1);
+	  	    	grid.add(plot, 0, 4, 2, 1);
+
+	  	    	dialog.getDialogPane().setContent(grid);
+	  	    	dialog.show();
+	  	     }
+	  	 });
+	  	 reports.getItems().add(sweep);
+	  	 //Setup Ctrl+T to activate the threshold sweep
+	  	 sweep.setAccelerator(new KeyCodeCombination(KeyCode.T, KeyCombination.CONTROL_DOWN));
+	}
+	
+	/*
+	 * Create a threshold sweep table column for a property of the results
+	 */
+	private TableColumn<ThresholdSweep.Result, Number> sweepColumn(String title, String property) {
+		TableColumn<ThresholdSweep.Result, Number> column = new TableColumn<ThresholdSweep.Result, Number>(title);
+		column.setCellValueFactory(new PropertyValueFactory<ThresholdSweep.Result, Number>(property));
+		return column;
+	}
+	
+	/*
+	 * @returns the peak index of the (filtered) accelerometer magnitude, built the first time it is needed
+	 */
+	private PeakIndex peakIndex() {
+		if (peaks == null) {
+			peaks = new PeakIndex(signal(), store.size());
+		}
+		return peaks;
+	}
+	
+	/*
+	 * @returns the min/max pyramid of the (filtered) accelerometer magnitude, 
+	 * the one of the sample store (built at load time or read from the cache) if no filter is on
+	 */
+	private MinMaxPyramid pyramid() {
+		if (pyramid == null) {
+			float[] accel = signal();
+			pyramid = (accel == store.getAccelMagnitude())? store.getPyramid() : new MinMaxPyramid(accel, store.size());
+		}
+		return pyramid;
+	}
+	
+	/*
+	 * @returns the accelerometer magnitude after the signal filters,
+	 * which is what is charted and what movements are detected in
+	 */
+	private float[] signal() {
+		float[] accel = store.getAccelMagnitude();
+		if (filtered == null) {
+			FilterChain chain = createFilters(store.getSampleRate());
+			if (chain.isEmpty()) {
+				return accel;
+			}
+			float[] out = new float[store.size()];
+			chain.apply(accel, 0, store.size(), out);
+			filtered = out;
+		}
+		return filtered;
+	}
+	
+	/*
+	 * Create the chain of filter stages from the filter settings
+	 * @param rate samples per second of the recording
+	 */
+	private FilterChain createFilters(double rate) {
+		FilterChain chain = new FilterChain();
+		if (gravityWindow > 0) {
+			chain.add(new HighPassFilter(samples(gravityWindow, rate)));
+		}
+		if (bandLongWindow > 0) {
+			chain.add(new BandPassFilter(samples(bandShortWindow, rate),
+					Math.max(samples(bandShortWindow, rate) + 1, samples(bandLongWindow, rate))));
+		}
+		if (smoothWindow > 0) {
+			chain.add(medianSmooth? new MedianFilter(samples(smoothWindow, rate))
+					: new MovingAverageFilter(samples(smoothWindow, rate)));
+		}
+		return chain;
+	}
+	
+	/*
+	 * @returns the number of samples (at least 1) in the given number of seconds
+	 */
+	private static int samples(double seconds, double rate) {
+		return (int) Math.max(1, Math.round(seconds * rate));
+	}
+	
+	/*
+	 * Detect the leg movements in the raw data using the current threshold
+	 * and replace the movement list with them
+	 */
+	private void detectMovements() {
+		// The peaks are indexed once, after that a detection only looks at the samples above the threshold
+		List<Movement> found = MovementDetector.detect(store.getTimes(), peakIndex(), thresholdValue);
+		// Set the leg down flags from the leg angle before each movement
+		found = LegAngleEstimator.tag(store, found, false);
+		detected = true;
+		mov.setAll(classifier.classify(found));
+	}
+	
+	/*
+	 * Relabel the movements as PLM or isolated with the current series parameters
+	 */
+	private void classifyMovements() {
+		mov.setAll(classifier.classify(mov));
 	}
 	
 	/*
@@ -948,7 +1367,7 @@ public class Main extends Application {
 		// variable to hold the total amount of plms in the time period
 		double count = 0;
 		// the time difference between the two times in hours - note: getTime() returns ms
-		double hours = Math.abs(end.getTime() - start.getTime())/3600000;
+		double hours = Math.abs(end.getTime() - start.getTime())/3600000.0;
 		System.out.println("Hours: " + hours);
 		
 		for (Movement m : mov) {
@@ -962,107 +1381,257 @@ public class Main extends Application {
 	}
 	  
 	 /**
-	  * Extract the accelerometer data from the device's csv file
-	 * @param dataFile 
+	  * Build chart points for a time span of the sample store, reduced to the first,
+	  * lowest, highest and last sample of each bucket with the min/max pyramid, 
+	  * so the cost depends on the number of buckets rather than the length of the span
+	  * @param from the start of the span (epoch millis)
+	  * @param to the end of the span (epoch millis)
+	  * @param buckets number of buckets, normally the chart width in pixels
+	  * @return at most Downsampler.POINTS_PER_BUCKET points per bucket
 	  */
-	  public void extractData(File dataFile) {
-	      // This will reference one line at a time
-	      String line = null;
+	  private List<XYChart.Data<Date, Number>> viewData(long from, long to, int buckets) {
+		  int first = store.indexOf(from);
+		  int last = store.indexOf(to + 1);
+		  long[] time = new long[Downsampler.POINTS_PER_BUCKET * buckets];
+		  float[] value = new float[time.length];
+		  int n = pyramid().reduce(store.getTimes(), first, last, from, to, buckets, time, value);
+		  List<XYChart.Data<Date, Number>> points = new ArrayList<XYChart.Data<Date, Number>>(n);
+		  for (int i = 0; i < n; i++) {
+			  points.add(new XYChart.Data<Date, Number>(new Date(time[i]), value[i]));
+		  }
+		  return points;
+	  }
+
+	 /**
+	  * Reduce the chart points again whenever the axis is zoomed, scrolled or resized
+	  */
+	  private void watchView(DateAxis axis) {
+		  viewWidth = 0;
+		  InvalidationListener listener = o -> requestView();
+		  axis.lowerBoundProperty().addListener(listener);
+		  axis.upperBoundProperty().addListener(listener);
+		  axis.widthProperty().addListener(listener);
+	  }
 
-	      try {
-	            // FileReader reads text files in the default encoding.
-	            FileReader fileReader = 
-	                new FileReader(dataFile);
+	 /**
+	  * Queue a chart point update, so a drag or resize only causes one per pulse
+	  */
+	  private void requestView() {
+		  if (!viewQueued) {
+			  viewQueued = true;
+			  Platform.runLater(this::updateView);
+		  }
+	  }
 
-	            // Always wrap FileReader in BufferedReader.
-	            BufferedReader bufferedReader = 
-	                new BufferedReader(fileReader);
+	 /**
+	  * Bind the samples in view of the x-axis, plus a margin either side, into the chart points.
+	  * Nothing changes while the view stays inside the points bound last time at (about) the same scale.
+	  */
+	  private void updateView() {
+		  viewQueued = false;
+		  if (store == null || store.size() == 0) {
+			  return;
+		  }
+		  // The points are only for the line chart
+		  DateAxis xAxis = view.getXAxis();
+		  long from, to;
+		  if (xAxis.isAutoRanging() || xAxis.getLowerBound() == null || xAxis.getUpperBound() == null) {
+			  // The axis fits the whole recording
+			  from = store.getTime(0);
+			  to = store.getTime(store.size() - 1);
+		  } else {
+			  from = xAxis.getLowerBound().getTime();
+			  to = xAxis.getUpperBound().getTime();
+		  }
+		  int width = (int) Math.ceil(xAxis.getWidth());
+		  // Before the first layout there is no width yet
+		  width = (width > 0)? width : 1000;
+		  long span = Math.max(1, to - from);
+		  long start = store.getTime(0), end = store.getTime(store.size() - 1);
+		  if (width == viewWidth && Math.abs(span - viewSpan) <= viewSpan * VIEW_SPAN_TOLERANCE
+				  && Math.max(from, start) >= viewFrom && Math.min(to, end) <= viewTo) {
+			  // Also stops setting the points from auto ranging the axis again
+			  return;
+		  }
+		  // Add the margin, the samples of the span are found by binary search in viewData
+		  long margin = Math.round(span * VIEW_MARGIN);
+		  viewFrom = Math.max(start, from - margin);
+		  viewTo = Math.min(end, to + margin);
+		  viewSpan = span;
+		  viewWidth = width;
+		  // Keep the same number of buckets per pixel in the margins
+		  int buckets = (int) Math.max(1, Math.min(Integer.MAX_VALUE / Downsampler.POINTS_PER_BUCKET,
+				  (long) width * Math.max(1, viewTo - viewFrom) / span));
+		  data.setAll(viewData(viewFrom, viewTo, buckets));
+	  }
 
-	            try {
-	            	data.clear();
-		            while((line = bufferedReader.readLine()) != null) {
-		                // YYYY-MM-DD hh:mm:ss.sss,accx,accy,accz,gyrx,gyry,gyrz
-		                // 01234567890123456789012345678901234567890123456789012
-		                
-		                String[] value = line.split(",");
-		                String date = value [0];
+	 /**
+	  * Extract the accelerometer data from the device's csv file.
+	  * The file is parsed on a background thread and the chart is filled in as blocks of rows arrive.
+	 * @param dataFile 
+	  */
+	  public void extractData(File dataFile) {
+		  // Throw away the previous recording, and any sweep still running over it
+		  if (sweepTask != null && sweepTask.isRunning()) {
+			  sweepTask.cancel();
+		  }
+		  store = null;
+		  peaks = null;
+		  filtered = null;
+		  pyramid = null;
+		  detected = false;
+		  data.clear();
+		  // The blocks may arrive out of order, so the axis looks through the points until the file is loaded
+		  view.getXAxis().setDataBounds(null, null);
+		  Task<SampleStore> task = new Task<SampleStore>() {
+			  // Chart points parsed but not yet handed to the chart
+			  private List<XYChart.Data<Date, Number>> pending = new ArrayList<XYChart.Data<Date, Number>>();
+			  private boolean flushQueued;
+			  // Filters the blocks in the order they arrive
+			  private FilterChain chain;
 
-		                // Check if the first value is a number = not title 
-		            	boolean ret = true;
-		                try {
-		                    Double.parseDouble(Character.toString(date.charAt(0)));
-	
-		                }catch (NumberFormatException e) {
-		                    ret = false;
-		                }
-		                
-		            	if (ret) {
-			                Calendar event = Calendar.getInstance();
-			                // Parse the values for the date
-			                event.set(Integer.parseInt(Character.toString(date.charAt(0)) + Character.toString(date.charAt(1))
-			                	+ Character.toString(date.charAt(2)) + Character.toString(date.charAt(3))),
-			                		Integer.parseInt(Character.toString(date.charAt(5)) + Character.toString(date.charAt(6))) - 1,
-			                		Integer.parseInt(Character.toString(date.charAt(8)) + Character.toString(date.charAt(9))),
-			                		Integer.parseInt(Character.toString(date.charAt(11)) + Character.toString(date.charAt(12))),
-			                		Integer.parseInt(Character.toString(date.charAt(14)) + Character.toString(date.charAt(15))), 
-			                		Integer.parseInt(Character.toString(date.charAt(17)) + Character.toString(date.charAt(18))));
-			                event.set(Calendar.MILLISECOND, Integer.parseInt(Character.toString(date.charAt(20))
-			                		+ Character.toString(date.charAt(21)) + Character.toString(date.charAt(22))));
-			                // Parse the accelerometer and gyroscope values
-			                double accGyro[] = new double[6];
-			                for(int i = 1; i < accGyro.length; i++) {
-			                	// Parse the data
-			                	accGyro[i - 1] = Double.parseDouble(value[i]);
-			                }
-			                
-			                // Get the magnitudes for the accelerometer and gyroscope
-			                double accel = Math.sqrt(accGyro[0]*accGyro[0] + accGyro[1]*accGyro[1]
-			                		+ accGyro[2]*accGyro[2]);
-			                //double gyro = Math.sqrt(accGyro[3]*accGyro[3] + accGyro[4]*accGyro[4]
-			                //		+ accGyro[5]*accGyro[5]);
-			                data.add(new XYChart.Data<Date, Number>(event.getTime(), accel));
-			            }   
-		            }
-	            } catch (Exception e) {
-	            	Alert alert = new Alert(AlertType.ERROR);
-	            	alert.setTitle("Error: Open File Error");
-	            	alert.setHeaderText("Open File Error");
-	            	alert.setContentText("The data file you attempted to open was of the wrong type or was misformatted."
-	            			+ "\nPlease check your file and try again.");
+			  @Override protected SampleStore call() throws Exception {
+				  updateMessage("Loading " + dataFile.getName());
+				  // Reuse the samples from an earlier open if the file has not changed
+				  SampleStore cached = SampleCache.load(dataFile);
+				  if (cached != null) {
+					  // In blocks, so a cancel does not wait for the whole file to be filtered and reduced
+					  for (int from = 0; from < cached.size() && !isCancelled(); from += CACHE_BLOCK) {
+						  int to = Math.min(cached.size(), from + CACHE_BLOCK);
+						  publish(cached.getTimes(), cached.getAccX(), cached.getAccY(), cached.getAccZ(), from, to);
+						  updateProgress(to, cached.size());
+					  }
+					  return cached;
+				  }
+				  // Parse the file straight into primitive columns
+				  RawDataParser.Result raw = RawDataParser.parse(dataFile, (result, from, to, bytesRead, bytesTotal) -> {
+					  publish(result.time, result.accX, result.accY, result.accZ, from, to);
+					  updateProgress(bytesRead, bytesTotal);
+					  return !isCancelled();
+				  });
+				  SampleStore parsed = new SampleStore(raw);
+				  // Write the sidecar (with the min/max pyramid, built here) so the next open can skip parsing
+				  updateMessage("Caching " + dataFile.getName());
+				  SampleCache.save(dataFile, parsed);
+				  return parsed;
+			  }
 
-	            	alert.showAndWait();
-	            }
-	            // Always close files.
-	            bufferedReader.close();         
-	      } catch(FileNotFoundException ex) {
-	            System.out.println(
-	                "Unable to open file '" + 
-	                dataFile.getName() + "'");                
-	      } catch(IOException ex) {
-	            System.out.println(
-	                "Error reading file '" 
-	                + dataFile.getName() + "'");
-	      }
+			  /*
+			   * Queue chart points for a block of samples
+			   */
+			  private void publish(long[] time, float[] accX, float[] accY, float[] accZ, int from, int to) {
+				  if (from >= to) {
+					  return;
+				  }
+				  List<XYChart.Data<Date, Number>> points = new ArrayList<XYChart.Data<Date, Number>>();
+				  // Get the magnitude for the accelerometer
+				  float[] accel = new float[to - from];
+				  SignalKernels.magnitude(accX, accY, accZ, from, to, accel);
+				  if (chain == null) {
+					  // Take the sample rate from the first block
+					  double rate = (to - from > 1 && time[to - 1] > time[from])?
+							  (to - from - 1) * 1000.0 / (time[to - 1] - time[from]) : 0;
+					  chain = createFilters(rate);
+				  }
+				  if (!chain.isEmpty()) {
+					  chain.apply(accel, 0, to - from, accel);
+				  }
+				  // Reduce the block to min/max buckets, the whole view is reduced again once loaded
+				  int buckets = Math.max(1, (to - from) / LOAD_BUCKET);
+				  long[] pointTime = new long[Downsampler.POINTS_PER_BUCKET * buckets];
+				  float[] pointValue = new float[pointTime.length];
+				  int n = Downsampler.reduce(Arrays.copyOfRange(time, from, to), accel, 0, to - from,
+						  time[from], time[to - 1], buckets, pointTime, pointValue);
+				  for (int i = 0; i < n; i++) {
+					  points.add(new XYChart.Data<Date, Number>(new Date(pointTime[i]), pointValue[i]));
+				  }
+				  boolean schedule;
+				  synchronized (this) {
+					  pending.addAll(points);
+					  // Only one batch is waiting on the application thread at a time
+					  schedule = !flushQueued;
+					  flushQueued = true;
+				  }
+				  if (schedule) {
+					  Platform.runLater(this::flush);
+				  }
+			  }
+
+			  /*
+			   * Add the queued points to the chart (application thread)
+			   */
+			  private void flush() {
+				  List<XYChart.Data<Date, Number>> batch;
+				  synchronized (this) {
+					  batch = pending;
+					  pending = new ArrayList<XYChart.Data<Date, Number>>();
+					  flushQueued = false;
+				  }
+				  if (!isCancelled()) {
+					  data.addAll(batch);
+				  }
+			  }
+		  };
+		  task.setOnSucceeded(e -> {
+			  store = task.getValue();
+			  // Set the max slider value of the slider
+			  slider.setMax(store.size() == 0? 0: store.size() - 1);
+			  if (store.size() > 0) {
+				  // The recording's first and last times bound the chart, so auto ranging need not look at the points
+				  view.getXAxis().setDataBounds(new Date(store.getTime(0)), new Date(store.getTime(store.size() - 1)));
+			  }
+			  // Replace the points of the blocks with the points for the view
+			  viewWidth = 0;
+			  updateView();
+			  if (canvasTrace) {
+				  showTrace();
+			  }
+		  });
+		  task.setOnCancelled(e -> data.clear());
+		  task.setOnFailed(e -> {
+			  data.clear();
+			  showOpenError(task.getException());
+		  });
+		  runLoadTask(task);
 	  }
 	  
 	  /**
-	  * Extract the accelerometer data from the device's csv file
-	 * @param dataFile 
+	  * Extract the movement analysis from the given csv file on a background thread
+	  * and show it on the chart once it has been read
+	 * @param analysisFile 
 	  */
 	  public void extractAnalysis(File analysisFile) {
+		  Task<List<Movement>> task = new Task<List<Movement>>() {
+			  @Override protected List<Movement> call() throws Exception {
+				  updateMessage("Importing " + analysisFile.getName());
+				  return readAnalysis(analysisFile);
+			  }
+		  };
+		  task.setOnSucceeded(e -> {
+			  detected = false;
+			  mov.setAll(task.getValue());
+			  showAnalysis();
+		  });
+		  task.setOnFailed(e -> showOpenError(task.getException()));
+		  runLoadTask(task);
+	  }
+
+	  /**
+	  * Read the movements from the given analysis csv file
+	 * @param analysisFile 
+	  * @return the movements in the file
+	  * @throws IOException if the file can not be read or is misformatted
+	  */
+	  private List<Movement> readAnalysis(File analysisFile) throws IOException {
 	      // This will reference one line at a time
 	      String line = null;
+	      List<Movement> movements = new ArrayList<Movement>();
+	      TimestampCodec codec = new TimestampCodec();
 
-	      try {
-	            // FileReader reads text files in the default encoding.
-	            FileReader fileReader = 
-	                new FileReader(analysisFile);
-
-	            // Always wrap FileReader in BufferedReader.
-	            BufferedReader bufferedReader = 
-	                new BufferedReader(fileReader);
+	      // FileReader reads text files in the default encoding.
+	      // Always wrap FileReader in BufferedReader.
+	      try (BufferedReader bufferedReader = new BufferedReader(new FileReader(analysisFile))) {
 	            try {
-	            	mov.clear();
 		            while((line = bufferedReader.readLine()) != null) {
 		                // YYYY-MM-DD hh:mm:ss.sss,E,strG,duraS,intvS,d,
 		                // 01234567890123456789012345678901234567890123456789012
@@ -1070,26 +1639,11 @@ public class Main extends Application {
 			             String date = value [0];
 
 			             // Check if the first value is a number = not title 
-			             boolean ret = true;
-			             try {
-			                 Double.parseDouble(Character.toString(date.charAt(0)));
-		
-			             }catch (Exception e) {
-			                 ret = false;
-			             }
+			             boolean ret = !date.isEmpty() && Character.isDigit(date.charAt(0));
 		                
 		            	if (ret) {
-			                Calendar event = Calendar.getInstance();
 			                // Parse the values for the date
-			                event.set(Integer.parseInt(Character.toString(date.charAt(0)) + Character.toString(date.charAt(1))
-			                	+ Character.toString(date.charAt(2)) + Character.toString(date.charAt(3))),
-			                		Integer.parseInt(Character.toString(date.charAt(5)) + Character.toString(date.charAt(6))) - 1,
-			                		Integer.parseInt(Character.toString(date.charAt(8)) + Character.toString(date.charAt(9))),
-			                		Integer.parseInt(Character.toString(date.charAt(11)) + Character.toString(date.charAt(12))),
-			                		Integer.parseInt(Character.toString(date.charAt(14)) + Character.toString(date.charAt(15))), 
-			                		Integer.parseInt(Character.toString(date.charAt(17)) + Character.toString(date.charAt(18))));
-			                event.set(Calendar.MILLISECOND, Integer.parseInt(Character.toString(date.charAt(20))
-			                		+ Character.toString(date.charAt(21)) + Character.toString(date.charAt(22))));
+			                Date event = new Date(codec.parse(date, 0));
 			                // Parse the event type
 			                String eType = value[1].trim();
 			                // Parse the strength
@@ -1114,96 +1668,111 @@ public class Main extends Application {
 			                } catch (Exception e) {}
 			              
 			                // Create a movement with the values and add to the list
-			                Movement m = new Movement(event.getTime(), eType, str, dur, inv, leg, reason);
+			                Movement m = new Movement(event, eType, str, dur, inv, leg, reason);
 			                System.out.println(m);
-			                mov.add(m);
+			                movements.add(m);
 			            }   
 		            }
-	            } catch (Exception e) {
-	            	Alert alert = new Alert(AlertType.ERROR);
-	            	alert.setTitle("Error: Open File Error");
-	            	alert.setHeaderText("Open File Error");
-	            	alert.setContentText("The data file you attempted to open was of the wrong type or was misformatted."
-	            			+ "\nPlease check your file and try again.\nError: " + e.getMessage());
-
-	            	alert.showAndWait();
+	            } catch (RuntimeException e) {
+	            	throw new IOException(e.getMessage(), e);
 	            }
-	            // Always close files.
-	            bufferedReader.close();         
-	      } catch(FileNotFoundException ex) {
-	            System.out.println(
-	                "Unable to open file '" + 
-	                analysisFile.getName() + "'");                
-	      } catch(IOException ex) {
-	            System.out.println(
-	                "Error reading file '" 
-	                + analysisFile.getName() + "'");
 	      }
+	      return movements;
 	  }
 
-	  /** 
-	   * @return plotted y values for monotonically increasing integer x values, starting from x=1
-	   * */
-	  public ObservableList<XYChart.Data<Date, Number>> plot() {
-	    final ObservableList<XYChart.Data<Date, Number>> dataset = FXCollections.observableArrayList();
-	    // For each movement in the list add a node
-	    for (LineChart.Data<Date, Number> val : data) {
-	    	final LineChart.Data<Date, Number> point = val;
-	    	for (Movement m : mov) {
-	    		if (val.getXValue().equals(m.getTime())){
-	    	    	String lab = "Start Time: " + dateFormat.format(m.getTime()) + "\nEvent Type: " + m.getType() + "\nStrength: "  + m.getStr() + "\nDuration: " + m.getDur()
-	    	    		+ "\nInterval: " + m.getInterval();
-	    	    	if (!m.getReason().isEmpty()) {
-	    	    		lab += "\nRejection Reason: " + m.getReason();
-	    	    	}
-	    	    	point.setNode(new HoveredThresholdNode(lab));
-	    		}
-	    	}
-	    	dataset.add(point);
-	    }
-
-	    return dataset;
+	  /**
+	   * Run a loading task on a background thread, showing its progress in place of the slider
+	   * @param task the task to run
+	   */
+	  private void runLoadTask(Task<?> task) {
+		  // Only one file is loaded at a time
+		  if (loadTask != null && loadTask.isRunning()) {
+			  loadTask.cancel();
+		  }
+		  loadTask = task;
+		  
+		  // Progress bar with a cancel button
+		  Label status = new Label();
+		  status.textProperty().bind(task.messageProperty());
+		  ProgressBar progress = new ProgressBar();
+		  progress.progressProperty().bind(task.progressProperty());
+		  progress.setMaxWidth(Double.MAX_VALUE);
+		  Button cancel = new Button("Cancel");
+		  cancel.setOnAction(e -> task.cancel());
+		  HBox bar = new HBox(10, status, progress, cancel);
+		  HBox.setHgrow(progress, Priority.ALWAYS);
+		  bar.setAlignment(Pos.CENTER_LEFT);
+		  bar.setPadding(new Insets(5, 15, 5, 15));
+		  borderpane.setBottom(bar);
+		  
+		  // Put the slider back once the task is over
+		  EventHandler<WorkerStateEvent> done = e -> {
+			  if (borderpane.getBottom() == bar) {
+				  borderpane.setBottom(slider);
+			  }
+		  };
+		  task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, done);
+		  task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, done);
+		  task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, done);
+		  
+		  Thread thread = new Thread(task, "PLM Analyzer Loader");
+		  thread.setDaemon(true);
+		  thread.start();
 	  }
 
-	  /** a node which displays a value on hover, but is otherwise empty */
-	  class HoveredThresholdNode extends StackPane {
-	    HoveredThresholdNode(String l) {
-	      setPrefSize(15, 15);
+	  /*
+	   * Runs a threshold sweep on a background thread, stopping the one before if it is still running.
+	   * The sweep does not touch the loading tasks or the slider.
+	   */
+	  private void runSweepTask(Task<?> task) {
+		  if (sweepTask != null && sweepTask.isRunning()) {
+			  sweepTask.cancel();
+		  }
+		  sweepTask = task;
+		  Thread thread = new Thread(task, "PLM Analyzer Sweep");
+		  thread.setDaemon(true);
+		  thread.start();
+	  }
 
-	      final Label label = new Label(l);
-	      label.getStyleClass().addAll("default-color0", "chart-line-symbol", "chart-series-line");
-	      label.setStyle("-fx-font-weight: bold;");
-	      label.setMinSize(Label.USE_PREF_SIZE, Label.USE_PREF_SIZE);
+	  /**
+	   * Tell the user that a file could not be opened
+	   * @param e what went wrong
+	   */
+	  private void showOpenError(Throwable e) {
+		  if (e instanceof FileNotFoundException) {
+			  System.out.println("Unable to open file: " + e.getMessage());
+		  }
+		  Alert alert = new Alert(AlertType.ERROR);
+		  alert.setTitle("Error: Open File Error");
+		  alert.setHeaderText("Open File Error");
+		  alert.setContentText("The data file you attempted to open was of the wrong type or was misformatted."
+				  + "\nPlease check your file and try again.\nError: " + ((e != null)? e.getMessage() : ""));
 
-	      setOnMouseEntered(new EventHandler<MouseEvent>() {
-	        @Override public void handle(MouseEvent mouseEvent) {
-	          // When the mouse is hovering, display the label and remove the cursor
-	          getChildren().setAll(label);
-	          setCursor(Cursor.NONE);
-	          // Bring the label in front of the node
-	          toFront();
-	        }
-	      });
-	      setOnMouseExited(new EventHandler<MouseEvent>() {
-	        @Override public void handle(MouseEvent mouseEvent) {
-	          // When the mouse leaves hover, remove the label and reset the cursor to a crosshair
-	          getChildren().clear();
-	          setCursor(Cursor.CROSSHAIR);
-	        }
-	      });
-	      
-	      setOnMouseClicked(new EventHandler<MouseEvent>() {
-		        @Override public void handle(MouseEvent mouseEvent) {
-		          // When the mouse is clicked, open a dialog box with the label
-		        	Alert alert = new Alert(AlertType.INFORMATION);
-	            	alert.setTitle("Movement Information");
-	            	alert.setHeaderText("Movement Details");
-	            	alert.setContentText(label.getText());
+		  alert.showAndWait();
+	  }
 
-	            	alert.showAndWait();
-		        }
-	      });
+	  /** 
+	   * Match each movement to the sample where it starts and hand them to the chart,
+	   * which shows the details of the one under the mouse
+	   * */
+	  public void plot() {
+	    float[] accel = signal();
+	    // Match the movements, in order of onset, to the samples in one pass
+	    List<Movement> sorted = new ArrayList<Movement>(mov);
+	    sorted.sort(Comparator.comparing(Movement::getTime));
+	    int[] at = EventMatcher.match(store.getTimes(), store.size(), sorted, EventMatcher.DEFAULT_TOLERANCE);
+	    List<Movement> matched = new ArrayList<Movement>(at.length);
+	    long[] time = new long[at.length];
+	    float[] value = new float[at.length];
+	    for (int j = 0; j < at.length; j++) {
+	    	int i = at[j];
+	    	if (i >= 0) {
+	    		time[matched.size()] = store.getTime(i);
+	    		value[matched.size()] = accel[i];
+	    		matched.add(sorted.get(j));
+	    	}
 	    }
+	    view.setEvents(matched, Arrays.copyOf(time, matched.size()), Arrays.copyOf(value, matched.size()));
 	  }
 
 	//JavaFX applications use the main method to launch the GUI.
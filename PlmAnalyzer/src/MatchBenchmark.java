@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/*
+ * Benchmark for matching movements to samples
+ *
+ * Loads a raw data csv file (or its cache), detects the movements in it and times the
+ * nested loop plot() used to do (every sample against every movement, exact times only)
+ * against the merge join of EventMatcher, printing the best time and the number of
+ * movements matched by each. The onsets are then moved off the sample times by a few ms
+ * to show the merge join still finds them.
+ * Usage: java MatchBenchmark file.csv [threshold] [runs]
+ */
+public class MatchBenchmark {
+	// How far the onsets are moved off the sample times (ms)
+	private static final long JITTER = 3;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java MatchBenchmark file.csv [threshold] [runs]");
+			return;
+		}
+		File file = new File(args[0]);
+		double threshold = (args.length > 1) ? Double.parseDouble(args[1]) : 1.0;
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+		SampleStore store = SampleCache.load(file);
+		if (store == null) {
+			store = new SampleStore(RawDataParser.parse(file));
+		}
+		int n = store.size();
+		long[] time = store.getTimes();
+		List<Movement> movements = MovementDetector.detect(time, store.getAccelMagnitude(), n, threshold);
+		List<Movement> shifted = new ArrayList<Movement>(movements.size());
+		for (Movement m : movements) {
+			shifted.add(new Movement(new Date(m.getTime().getTime() + JITTER), m.getType(), m.getStr(), m.getDur(),
+					m.getInterval(), m.getDown().equals("t"), m.getReason()));
+		}
+
+		System.out.println();
+		System.out.println(String.format("%d samples, %d movements, best of %d runs", n, movements.size(), runs));
+		System.out.println("Method\t\tOnsets\t\tms\t\tMatched");
+		long best = Long.MAX_VALUE;
+		int matched = 0;
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			matched = nestedLoop(time, n, movements);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println(String.format("Nested loop\texact\t\t%.2f\t\t%d", best / 1e6, matched));
+		best = Long.MAX_VALUE;
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			matched = nestedLoop(time, n, shifted);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println(String.format("Nested loop\t+%d ms\t\t%.2f\t\t%d", JITTER, best / 1e6, matched));
+		mergeJoin("exact", time, n, movements, runs);
+		mergeJoin("+" + JITTER + " ms", time, n, shifted, runs);
+	}
+
+	/*
+	 * Time the merge join and print the best time and the number matched
+	 */
+	private static void mergeJoin(String onsets, long[] time, int size, List<Movement> movements, int runs) {
+		long best = Long.MAX_VALUE;
+		int matched = 0;
+		// The first runs warm up the JIT
+		for (int r = 0; r < runs + 5; r++) {
+			long start = System.nanoTime();
+			matched = count(EventMatcher.match(time, size, movements, EventMatcher.DEFAULT_TOLERANCE));
+			if (r >= 5) {
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		}
+		System.out.println(String.format("Merge join\t%s\t\t%.2f\t\t%d", onsets, best / 1e6, matched));
+	}
+
+	/*
+	 * The matching plot() used to do
+	 * @return the number of matches
+	 */
+	private static int nestedLoop(long[] time, int size, List<Movement> movements) {
+		int matched = 0;
+		for (int i = 0; i < size; i++) {
+			for (Movement m : movements) {
+				if (time[i] == m.getTime().getTime()) {
+					matched++;
+				}
+			}
+		}
+		return matched;
+	}
+
+	private static int count(int[] at) {
+		int matched = 0;
+		for (int i : at) {
+			if (i >= 0) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+}
@@ -0,0 +1,54 @@
+import java.util.Arrays;
+
+/*
+ * Moving median over the last window samples
+ *
+ * The samples of the window are kept in a ring buffer, in arrival order, and in a
+ * sorted copy. Each new sample replaces the oldest one in the sorted copy with a
+ * binary search and a shift, so a sample costs O(window).
+ * Unlike a moving average, a median drops single sample spikes completely.
+ */
+public class MedianFilter implements SignalFilter {
+	private final float[] ring;
+	private final float[] sorted;
+	private int next; // where the next sample goes
+	private int count; // samples in the ring
+
+	/*
+	 * @param window number of samples the median is taken over
+	 */
+	public MedianFilter(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("the window must have at least one sample");
+		}
+		ring = new float[window];
+		sorted = new float[window];
+	}
+
+	@Override
+	public float apply(float value) {
+		if (count == ring.length) {
+			// Take the oldest sample out of the sorted copy
+			int old = Arrays.binarySearch(sorted, 0, count, ring[next]);
+			System.arraycopy(sorted, old + 1, sorted, old, count - old - 1);
+			count--;
+		}
+		ring[next] = value;
+		next = (next + 1 == ring.length) ? 0 : next + 1;
+		// Insert the new sample in order
+		int at = Arrays.binarySearch(sorted, 0, count, value);
+		if (at < 0) {
+			at = -at - 1;
+		}
+		System.arraycopy(sorted, at, sorted, at + 1, count - at);
+		sorted[at] = value;
+		count++;
+		return ((count & 1) == 1) ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+	}
+
+	@Override
+	public void reset() {
+		next = 0;
+		count = 0;
+	}
+}
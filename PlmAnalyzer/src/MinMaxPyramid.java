@@ -0,0 +1,301 @@
+/*
+ * Multi-resolution min/max/mean summary of a channel for zooming the chart
+ *
+ * Level 0 splits the channel into buckets of BASE samples, and every level above
+ * halves the number of buckets (BASE << level samples each). A bucket holds the
+ * index of its lowest and highest sample and its mean. Any run of samples is covered
+ * by at most two buckets per level plus fewer than BASE samples at each end, so the
+ * min/max of a pixel of the chart costs O(log n) whatever span it covers, and a view
+ * costs O(pixels) rather than O(samples in view).
+ * The pyramid takes about 1/3 of the memory of the channel (with its times).
+ */
+public class MinMaxPyramid {
+	// Samples per bucket of level 0
+	static final int BASE = 16;
+
+	private final float[] signal;
+	private final int size;
+	// Per level: the index of the lowest and highest sample and the mean of each bucket
+	private final int[][] minAt;
+	private final int[][] maxAt;
+	private final float[][] mean;
+
+	/*
+	 * Build the pyramid of a channel
+	 * @param signal the channel values
+	 * @param size number of samples
+	 */
+	public MinMaxPyramid(float[] signal, int size) {
+		this.signal = signal;
+		this.size = size;
+		int levels = levels(size);
+		minAt = new int[levels][];
+		maxAt = new int[levels][];
+		mean = new float[levels][];
+		for (int level = 0; level < levels; level++) {
+			int count = buckets(size, level);
+			minAt[level] = new int[count];
+			maxAt[level] = new int[count];
+			mean[level] = new float[count];
+		}
+		// Level 0 from the samples
+		for (int b = 0; b < minAt[0].length; b++) {
+			int from = b * BASE;
+			int to = Math.min(size, from + BASE);
+			int min = from, max = from;
+			double sum = 0;
+			for (int i = from; i < to; i++) {
+				float v = signal[i];
+				if (v < signal[min]) {
+					min = i;
+				} else if (v > signal[max]) {
+					max = i;
+				}
+				sum += v;
+			}
+			minAt[0][b] = min;
+			maxAt[0][b] = max;
+			mean[0][b] = (float) (sum / (to - from));
+		}
+		// Every other level from the pairs of buckets below it
+		for (int level = 1; level < levels; level++) {
+			int[] lowMin = minAt[level - 1], lowMax = maxAt[level - 1];
+			float[] lowMean = mean[level - 1];
+			for (int b = 0; b < minAt[level].length; b++) {
+				int left = 2 * b, right = left + 1;
+				if (right >= lowMin.length) {
+					minAt[level][b] = lowMin[left];
+					maxAt[level][b] = lowMax[left];
+					mean[level][b] = lowMean[left];
+					continue;
+				}
+				minAt[level][b] = (signal[lowMin[right]] < signal[lowMin[left]]) ? lowMin[right] : lowMin[left];
+				maxAt[level][b] = (signal[lowMax[right]] > signal[lowMax[left]]) ? lowMax[right] : lowMax[left];
+				double leftCount = count(level - 1, left), rightCount = count(level - 1, right);
+				mean[level][b] = (float) ((lowMean[left] * leftCount + lowMean[right] * rightCount)
+						/ (leftCount + rightCount));
+			}
+		}
+	}
+
+	/*
+	 * Create a pyramid from levels read back from a SampleCache
+	 */
+	MinMaxPyramid(float[] signal, int size, int[][] minAt, int[][] maxAt, float[][] mean) {
+		this.signal = signal;
+		this.size = size;
+		this.minAt = minAt;
+		this.maxAt = maxAt;
+		this.mean = mean;
+	}
+
+	/*
+	 * @returns the number of levels of the pyramid of a channel with size samples
+	 */
+	static int levels(int size) {
+		int levels = 1;
+		while (buckets(size, levels - 1) > 1) {
+			levels++;
+		}
+		return levels;
+	}
+
+	/*
+	 * @returns the number of buckets of a level of the pyramid of a channel with size samples
+	 */
+	static int buckets(int size, int level) {
+		long length = (long) BASE << level;
+		return (int) Math.max(1, (size + length - 1) / length);
+	}
+
+	/*
+	 * @returns true if every index of a level lies in its own bucket of a channel with size samples
+	 */
+	static boolean inBuckets(int[] indexes, int size, int level) {
+		for (int b = 0; b < indexes.length; b++) {
+			long from = (long) b * BASE << level;
+			long to = Math.min(size, from + ((long) BASE << level));
+			if (indexes[b] < from || indexes[b] >= to) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * @returns the number of samples in a bucket
+	 */
+	private int count(int level, int bucket) {
+		long from = (long) bucket * BASE << level;
+		return (int) (Math.min(size, from + ((long) BASE << level)) - from);
+	}
+
+	/*
+	 * @returns the summarized channel
+	 */
+	public float[] getSignal() {
+		return signal;
+	}
+
+	/*
+	 * @returns the number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * @returns the number of levels
+	 */
+	public int levels() {
+		return minAt.length;
+	}
+
+	int[] getMinAt(int level) {
+		return minAt[level];
+	}
+
+	int[] getMaxAt(int level) {
+		return maxAt[level];
+	}
+
+	float[] getMean(int level) {
+		return mean[level];
+	}
+
+	/*
+	 * @returns the mean of the samples [from, to)
+	 */
+	public double mean(int from, int to) {
+		if (from >= to) {
+			return 0;
+		}
+		int count = to - from;
+		double sum = 0;
+		// The ends that do not fill a bucket of level 0
+		while (from < to && from % BASE != 0) {
+			sum += signal[from++];
+		}
+		while (to > from && to % BASE != 0) {
+			sum += signal[--to];
+		}
+		int low = from / BASE, high = to / BASE;
+		for (int level = 0; low < high; level++, low >>= 1, high >>= 1) {
+			if ((low & 1) == 1) {
+				sum += (double) mean[level][low] * count(level, low);
+				low++;
+			}
+			if ((high & 1) == 1) {
+				high--;
+				sum += (double) mean[level][high] * count(level, high);
+			}
+		}
+		return sum / count;
+	}
+
+	/*
+	 * Reduce the samples [from, to) to the first, lowest, highest and last sample
+	 * of each bucket of the time span [start, end], finding each bucket's samples from
+	 * the pyramid instead of looking at all of them. The buckets split the span in the
+	 * same place as Downsampler.reduce, and ties go to the earliest sample as there,
+	 * so both give the same points.
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param buckets number of buckets the span is split into
+	 * @param outTime receives the times of the points, needs Downsampler.POINTS_PER_BUCKET * buckets room
+	 * @param outValue receives the values of the points
+	 * @return the number of points written
+	 */
+	public int reduce(long[] time, int from, int to, long start, long end, int buckets,
+			long[] outTime, float[] outValue) {
+		int n = 0;
+		if (from >= to || buckets < 1) {
+			return n;
+		}
+		if (end <= start) {
+			// No span to split, Downsampler puts everything in the first bucket
+			buckets = 1;
+		}
+		int[] extremes = new int[2];
+		int first = from;
+		for (int b = 1; b <= buckets && first < to; b++) {
+			// The samples up to the start of the next bucket (rounded up, as the bucket of a
+			// sample is rounded down), the last bucket takes the rest
+			int next = (b == buckets) ? to
+					: search(time, first, to, start + ((end - start) * b + buckets - 1) / buckets);
+			if (next == first) {
+				continue;
+			}
+			extremes(first, next, extremes);
+			n = Downsampler.emit(time, signal, first, extremes[0], extremes[1], next - 1, outTime, outValue, n);
+			first = next;
+		}
+		return n;
+	}
+
+	/*
+	 * Find the index of the lowest and highest sample of [from, to), the earliest of equal ones
+	 * @param out receives the two indexes
+	 */
+	void extremes(int from, int to, int[] out) {
+		int min = from, max = from;
+		// The ends that do not fill a bucket of level 0
+		int low = from, high = to;
+		while (low < high && low % BASE != 0) {
+			min = lower(low, min);
+			max = higher(low, max);
+			low++;
+		}
+		while (high > low && high % BASE != 0) {
+			high--;
+			min = lower(high, min);
+			max = higher(high, max);
+		}
+		// At most two buckets per level in between, which are not looked at in order
+		low /= BASE;
+		high /= BASE;
+		for (int level = 0; low < high; level++, low >>= 1, high >>= 1) {
+			if ((low & 1) == 1) {
+				min = lower(minAt[level][low], min);
+				max = higher(maxAt[level][low], max);
+				low++;
+			}
+			if ((high & 1) == 1) {
+				high--;
+				min = lower(minAt[level][high], min);
+				max = higher(maxAt[level][high], max);
+			}
+		}
+		out[0] = min;
+		out[1] = max;
+	}
+
+	/*
+	 * @returns the sample (of two) with the lower value, or the earlier one if they are equal
+	 */
+	private int lower(int i, int j) {
+		return (signal[i] < signal[j] || (signal[i] == signal[j] && i < j)) ? i : j;
+	}
+
+	/*
+	 * @returns the sample (of two) with the higher value, or the earlier one if they are equal
+	 */
+	private int higher(int i, int j) {
+		return (signal[i] > signal[j] || (signal[i] == signal[j] && i < j)) ? i : j;
+	}
+
+	/*
+	 * @returns the index of the first sample of [from, to) at or after the given time (to if none)
+	 */
+	private static int search(long[] time, int from, int to, long millis) {
+		int low = from, high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (time[mid] < millis) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
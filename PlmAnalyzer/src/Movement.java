@@ -1,4 +1,3 @@
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Objects;
 
@@ -50,6 +49,26 @@ public class Movement {
 		  return type.toString();
 	  }
 	  
+	  /*
+	   * @returns this movement with the given type (P, I, R, U)
+	   */
+	  Movement withType(String event) {
+		  if (type == eventType.valueOf(event)) {
+			  return this;
+		  }
+		  return new Movement(time, event, str, dur, interval, down, reason);
+	  }
+
+	  /*
+	   * @returns this movement with the given leg down flag
+	   */
+	  Movement withDown(boolean down) {
+		  if (this.down == down) {
+			  return this;
+		  }
+		  return new Movement(time, getType(), str, dur, interval, down, reason);
+	  }
+
 	  /*
 	   * @returns the duration of the movement
 	   */
@@ -132,10 +151,8 @@ public class Movement {
 	   */
 	   @Override
 	   public String toString() {
-		   // Format for dates on x-axis
-		   SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
 		   String inv = (this.getInterval() == Double.POSITIVE_INFINITY)?"inf ": String.format("%.3f", this.getInterval());
-		   String ret = String.format("%s,%s,%.2f,%.3f,%s,%s,%s", dateFormat.format(this.getTime()), 
+		   String ret = String.format("%s,%s,%.2f,%.3f,%s,%s,%s", TimestampCodec.local().format(this.getTime()), 
 				   this.getType(), this.getStr(), this.getDur(), inv, this.getDown() , this.getReason());
 	       return ret;
 	   }
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/*
+ * Single pass leg movement detector
+ *
+ * Samples are fed in time order. A movement starts at the first sample above the
+ * threshold and ends at the last sample above it once the signal has stayed at or
+ * below the threshold, or there have been no samples, for the merge gap. Movements shorter than the minimum duration
+ * are dropped, longer than the maximum duration are kept as rejected (R).
+ * Every other movement is emitted as isolated (I) until a classifier labels the series.
+ */
+public class MovementDetector {
+	// Default detection parameters (ms)
+	public static final long DEFAULT_MERGE_GAP = 500;
+	public static final long DEFAULT_MIN_DURATION = 500;
+	public static final long DEFAULT_MAX_DURATION = 10000;
+
+	private final double threshold; // g
+	private final long mergeGap; // time below threshold that ends a movement
+	private final long minDuration; // shortest movement kept
+	private final long maxDuration; // longest movement not rejected
+
+	// The movement currently being tracked
+	private boolean active;
+	private long start;
+	private long lastAbove;
+	private float peak;
+	// End of the previously emitted movement, for the interval
+	private long previousEnd = Long.MIN_VALUE;
+	private final List<Movement> movements = new ArrayList<Movement>();
+
+	/*
+	 * Create a detector with the default gap and durations
+	 * @param threshold the detection threshold (g)
+	 */
+	public MovementDetector(double threshold) {
+		this(threshold, DEFAULT_MERGE_GAP, DEFAULT_MIN_DURATION, DEFAULT_MAX_DURATION);
+	}
+
+	/*
+	 * @param threshold the detection threshold (g)
+	 * @param mergeGap how long (ms) the signal has to stay at or below the threshold to end a movement
+	 * @param minDuration shortest movement (ms) that is kept
+	 * @param maxDuration longest movement (ms) that is not rejected
+	 */
+	public MovementDetector(double threshold, long mergeGap, long minDuration, long maxDuration) {
+		this.threshold = threshold;
+		this.mergeGap = mergeGap;
+		this.minDuration = minDuration;
+		this.maxDuration = maxDuration;
+	}
+
+	/*
+	 * Run a detector over a whole channel
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param signal the channel to compare against the threshold
+	 * @param size number of samples
+	 * @param threshold the detection threshold (g)
+	 * @return the detected movements in time order
+	 */
+	public static List<Movement> detect(long[] time, float[] signal, int size, double threshold) {
+		MovementDetector detector = new MovementDetector(threshold);
+		for (int i = 0; i < size; i++) {
+			detector.accept(time[i], signal[i]);
+		}
+		return detector.finish();
+	}
+
+	/*
+	 * Run a detector over the samples above the threshold only, using the peak index
+	 * to jump over the stretches below it. Gives the same movements as a full pass.
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param peaks the peak index of the channel to compare against the threshold
+	 * @param threshold the detection threshold (g)
+	 * @return the detected movements in time order
+	 */
+	public static List<Movement> detect(long[] time, PeakIndex peaks, double threshold) {
+		MovementDetector detector = new MovementDetector(threshold);
+		float[] signal = peaks.getSignal();
+		int size = peaks.size();
+		int i = peaks.nextAbove(0, threshold);
+		while (i >= 0) {
+			// Feed the run of samples above the threshold
+			while (i < size && signal[i] > threshold) {
+				detector.accept(time[i], signal[i]);
+				i++;
+			}
+			i = peaks.nextAbove(i, threshold);
+		}
+		return detector.finish();
+	}
+
+	/*
+	 * Feed the next sample
+	 */
+	public void accept(long time, float value) {
+		if (value > threshold) {
+			if (active && time - lastAbove >= mergeGap) {
+				// Nothing came in for too long, so this is a new movement
+				end();
+			}
+			if (!active) {
+				active = true;
+				start = time;
+				peak = value;
+			} else if (value > peak) {
+				peak = value;
+			}
+			lastAbove = time;
+		} else if (active && time - lastAbove >= mergeGap) {
+			end();
+		}
+	}
+
+	/*
+	 * Close the movement in progress, if any
+	 * @return every movement detected so far
+	 */
+	public List<Movement> finish() {
+		if (active) {
+			end();
+		}
+		return movements;
+	}
+
+	private void end() {
+		active = false;
+		long duration = lastAbove - start;
+		if (duration < minDuration) {
+			return;
+		}
+		double interval = (previousEnd == Long.MIN_VALUE) ? Double.POSITIVE_INFINITY
+				: (start - previousEnd) / 1000.0;
+		previousEnd = lastAbove;
+		if (duration > maxDuration) {
+			movements.add(new Movement(new Date(start), "R", peak, duration / 1000.0, interval, true,
+					"Longer than " + (maxDuration / 1000.0) + " s"));
+		} else {
+			movements.add(new Movement(new Date(start), "I", peak, duration / 1000.0, interval, true, ""));
+		}
+	}
+}
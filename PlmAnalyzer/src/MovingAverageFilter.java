@@ -0,0 +1,43 @@
+/*
+ * Moving average over the last window samples
+ *
+ * The samples of the window are kept in a ring buffer and their sum is updated as
+ * samples come in and drop out. Until the window has filled up, the average is
+ * over the samples seen so far.
+ */
+public class MovingAverageFilter implements SignalFilter {
+	private final float[] ring;
+	private int next; // where the next sample goes
+	private int count; // samples in the ring
+	private double sum;
+
+	/*
+	 * @param window number of samples averaged
+	 */
+	public MovingAverageFilter(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("the window must have at least one sample");
+		}
+		ring = new float[window];
+	}
+
+	@Override
+	public float apply(float value) {
+		if (count == ring.length) {
+			sum -= ring[next];
+		} else {
+			count++;
+		}
+		ring[next] = value;
+		sum += value;
+		next = (next + 1 == ring.length) ? 0 : next + 1;
+		return (float) (sum / count);
+	}
+
+	@Override
+	public void reset() {
+		next = 0;
+		count = 0;
+		sum = 0;
+	}
+}
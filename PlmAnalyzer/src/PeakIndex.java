@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/*
+ * Index of the peaks of a channel for finding the samples above a threshold
+ *
+ * The channel is split into blocks of BLOCK samples and a segment tree holds the
+ * maximum of every block and of every run of blocks. Finding the next sample above a
+ * threshold skips every block whose maximum is not above it, so the quiet stretches
+ * of a night cost a few tree steps whatever the threshold is.
+ * The tree takes at most 1/16 of the memory of the channel.
+ */
+public class PeakIndex {
+	// Samples per leaf of the tree
+	private static final int BLOCK = 64;
+
+	private final float[] signal;
+	private final int size;
+	// Number of leaves (a power of two) and the tree, leaf i is at leaves + i
+	private final int leaves;
+	private final float[] tree;
+
+	/*
+	 * Build the index of a channel
+	 * @param signal the channel values
+	 * @param size number of samples
+	 */
+	public PeakIndex(float[] signal, int size) {
+		this.signal = signal;
+		this.size = size;
+		int blocks = Math.max(1, (size + BLOCK - 1) / BLOCK);
+		int n = 1;
+		while (n < blocks) {
+			n <<= 1;
+		}
+		leaves = n;
+		tree = new float[2 * n];
+		Arrays.fill(tree, Float.NEGATIVE_INFINITY);
+		for (int b = 0; b < blocks; b++) {
+			float max = Float.NEGATIVE_INFINITY;
+			int end = Math.min(size, (b + 1) * BLOCK);
+			for (int i = b * BLOCK; i < end; i++) {
+				if (signal[i] > max) {
+					max = signal[i];
+				}
+			}
+			tree[n + b] = max;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+		}
+	}
+
+	/*
+	 * @returns the indexed channel
+	 */
+	public float[] getSignal() {
+		return signal;
+	}
+
+	/*
+	 * @returns the number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * @returns the largest value of the channel
+	 */
+	public float max() {
+		return tree[1];
+	}
+
+	/*
+	 * Find the first sample at or after the given index that is above the threshold
+	 * @return the index of the sample, or -1 if there is none
+	 */
+	public int nextAbove(int from, double threshold) {
+		if (from >= size) {
+			return -1;
+		}
+		// Rest of the current block
+		int block = from / BLOCK;
+		int end = Math.min(size, (block + 1) * BLOCK);
+		for (int i = from; i < end; i++) {
+			if (signal[i] > threshold) {
+				return i;
+			}
+		}
+		block = nextBlockAbove(block + 1, threshold);
+		if (block < 0) {
+			return -1;
+		}
+		// The block has a sample above the threshold
+		for (int i = block * BLOCK; ; i++) {
+			if (signal[i] > threshold) {
+				return i;
+			}
+		}
+	}
+
+	/*
+	 * Find the first block at or after the given block whose maximum is above the threshold
+	 */
+	private int nextBlockAbove(int block, double threshold) {
+		if (block >= leaves) {
+			return -1;
+		}
+		int i = leaves + block;
+		while (tree[i] <= threshold) {
+			// Climb while this is a right child, then move on to the right sibling
+			while ((i & 1) == 1) {
+				if (i == 1) {
+					return -1;
+				}
+				i >>= 1;
+			}
+			i++;
+		}
+		// Descend to the leftmost leaf above the threshold
+		while (i < leaves) {
+			i <<= 1;
+			if (tree[i] <= threshold) {
+				i++;
+			}
+		}
+		return i - leaves;
+	}
+}
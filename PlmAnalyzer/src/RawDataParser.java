@@ -0,0 +1,547 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Parser for the device's raw data csv files
+ * (TimeStamp,AccX,AccY,AccZ,GyroX,GyroY,GyroZ)
+ *
+ * The file is split into line-aligned chunks that are memory mapped and parsed
+ * in parallel on a fork-join pool. Every row is parsed straight from the mapped
+ * bytes into primitive column arrays, so no Strings, Calendars or boxed numbers
+ * are created per row.
+ */
+public class RawDataParser {
+	// Bounds for the size of the chunks parsed in parallel
+	private static final long MIN_CHUNK_SIZE = 1024L * 1024;
+	private static final long MAX_CHUNK_SIZE = 32L * 1024 * 1024;
+	// Rough size of one row in bytes, used to size the column arrays up front
+	private static final int BYTES_PER_ROW = 96;
+	// Exact powers of ten for decoding decimal numbers
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1.0;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10.0;
+		}
+	}
+
+	/*
+	 * The columns parsed from a raw data file.
+	 * Only the first size entries of each array are valid.
+	 */
+	public static class Result {
+		public long[] time;
+		public float[] accX, accY, accZ;
+		public float[] gyroX, gyroY, gyroZ;
+		public int size;
+		// Number of bytes read and how long the parse took
+		public long bytes;
+		public long nanos;
+
+		Result(int capacity) {
+			time = new long[capacity];
+			accX = new float[capacity];
+			accY = new float[capacity];
+			accZ = new float[capacity];
+			gyroX = new float[capacity];
+			gyroY = new float[capacity];
+			gyroZ = new float[capacity];
+		}
+
+		/*
+		 * Make room for at least one more row
+		 */
+		void ensureCapacity() {
+			if (size < time.length) {
+				return;
+			}
+			int capacity = time.length + (time.length >> 1) + 16;
+			time = Arrays.copyOf(time, capacity);
+			accX = Arrays.copyOf(accX, capacity);
+			accY = Arrays.copyOf(accY, capacity);
+			accZ = Arrays.copyOf(accZ, capacity);
+			gyroX = Arrays.copyOf(gyroX, capacity);
+			gyroY = Arrays.copyOf(gyroY, capacity);
+			gyroZ = Arrays.copyOf(gyroZ, capacity);
+		}
+
+		/*
+		 * @returns the parse throughput in rows per second
+		 */
+		public double rowsPerSecond() {
+			return (nanos > 0) ? size / (nanos / 1e9) : 0.0;
+		}
+
+		/*
+		 * @returns the parse throughput in megabytes per second
+		 */
+		public double megabytesPerSecond() {
+			return (nanos > 0) ? (bytes / (1024.0 * 1024.0)) / (nanos / 1e9) : 0.0;
+		}
+	}
+
+	/*
+	 * Receives blocks of rows while a file is being parsed.
+	 * Blocks arrive in file order, on the thread that called parse.
+	 */
+	public interface Listener {
+		/*
+		 * Rows [from, to) of the result have been parsed.
+		 * The result's arrays may be reused once this returns, so copy what is needed first.
+		 * @param bytesRead how far into the file the parser is
+		 * @param bytesTotal the size of the file
+		 * @return false to cancel the parse
+		 */
+		boolean rowsParsed(Result result, int from, int to, long bytesRead, long bytesTotal);
+	}
+
+	/*
+	 * Parses one line-aligned chunk of the file
+	 */
+	private static class ChunkTask extends RecursiveTask<Result> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel channel;
+		private final long start, end;
+
+		ChunkTask(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Result compute() {
+			try {
+				return new RawDataParser().parseChunk(channel, start, end);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	// Buffer currently being parsed, its offset in the file and the read position inside it
+	private MappedByteBuffer buf;
+	private long bufOffset;
+	private int pos;
+	// Offset of the row being parsed, for error messages
+	private int rowStart;
+	// Decodes the timestamps, caching the day between rows
+	private final TimestampCodec timestamps = new TimestampCodec();
+
+	/*
+	 * Parse the given raw data file
+	 * @param dataFile the csv file to parse
+	 * @return the parsed columns
+	 * @throws IOException if the file can not be read or a row is misformatted
+	 */
+	public static Result parse(File dataFile) throws IOException {
+		return parse(dataFile, null);
+	}
+
+	/*
+	 * Parse the given raw data file on the common fork-join pool,
+	 * handing blocks of rows to the listener as they are parsed
+	 * @param dataFile the csv file to parse
+	 * @param listener receives each block of rows, may be null
+	 * @return the parsed columns
+	 * @throws IOException if the file can not be read or a row is misformatted
+	 * @throws CancellationException if the listener cancelled the parse
+	 */
+	public static Result parse(File dataFile, Listener listener) throws IOException {
+		return parse(dataFile, listener, ForkJoinPool.commonPool());
+	}
+
+	/*
+	 * Parse the given raw data file on the given pool.
+	 * The file is split on line boundaries and the chunks are parsed in parallel,
+	 * then stitched back together in file order.
+	 * @param dataFile the csv file to parse
+	 * @param listener receives each block of rows, may be null
+	 * @param pool the pool that parses the chunks
+	 * @return the parsed columns
+	 * @throws IOException if the file can not be read or a row is misformatted
+	 * @throws CancellationException if the listener cancelled the parse
+	 */
+	public static Result parse(File dataFile, Listener listener, ForkJoinPool pool) throws IOException {
+		long start = System.nanoTime();
+		try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r");
+				FileChannel channel = raf.getChannel()) {
+			long length = channel.size();
+			long[] bounds = split(channel, length, pool.getParallelism());
+			List<ChunkTask> tasks = new ArrayList<ChunkTask>(bounds.length - 1);
+			for (int i = 0; i + 1 < bounds.length; i++) {
+				ChunkTask task = new ChunkTask(channel, bounds[i], bounds[i + 1]);
+				tasks.add(task);
+				pool.execute(task);
+			}
+
+			// Collect the chunks in file order
+			List<Result> chunks = new ArrayList<Result>(tasks.size());
+			try {
+				for (int i = 0; i < tasks.size(); i++) {
+					Result chunk = join(tasks.get(i));
+					chunks.add(chunk);
+					if (listener != null && chunk.size > 0
+							&& !listener.rowsParsed(chunk, 0, chunk.size, bounds[i + 1], length)) {
+						throw new CancellationException("Parsing cancelled");
+					}
+				}
+			} finally {
+				// Stop whatever is left if a chunk failed or the parse was cancelled
+				for (ChunkTask task : tasks) {
+					task.cancel(false);
+				}
+			}
+
+			Result result = stitch(chunks);
+			result.bytes = length;
+			result.nanos = System.nanoTime() - start;
+			return result;
+		}
+	}
+
+	private static Result join(ChunkTask task) throws IOException {
+		try {
+			return task.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/*
+	 * Split the file into chunks that start at the beginning of a line
+	 * @return the chunk boundaries, starting with 0 and ending with the file length
+	 */
+	private static long[] split(FileChannel channel, long length, int parallelism) throws IOException {
+		// Several chunks per thread to balance the load, but small enough that the
+		// first rows reach the listener quickly
+		long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, length / (parallelism * 4L)));
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		long last = 0;
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		while (length - last > chunkSize) {
+			long p = last + chunkSize;
+			long next = -1;
+			// Move the boundary forward to just after the next newline
+			while (next < 0 && p < length) {
+				probe.clear();
+				int read = channel.read(probe, p);
+				if (read <= 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++) {
+					if (probe.get(i) == '\n') {
+						next = p + i + 1;
+						break;
+					}
+				}
+				p += read;
+			}
+			if (next < 0 || next >= length) {
+				break;
+			}
+			bounds.add(next);
+			last = next;
+		}
+		bounds.add(length);
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/*
+	 * Join the chunk results into one set of columns, in time order
+	 */
+	private static Result stitch(List<Result> chunks) {
+		if (chunks.size() == 1) {
+			Result only = chunks.get(0);
+			if (!isSorted(only.time, 0, only.size)) {
+				sortByTime(only);
+			}
+			return only;
+		}
+		int total = 0;
+		for (Result chunk : chunks) {
+			total += chunk.size;
+		}
+		Result result = new Result(total);
+		boolean sorted = true;
+		for (int i = 0; i < chunks.size(); i++) {
+			Result chunk = chunks.get(i);
+			int n = chunk.size;
+			int at = result.size;
+			System.arraycopy(chunk.time, 0, result.time, at, n);
+			System.arraycopy(chunk.accX, 0, result.accX, at, n);
+			System.arraycopy(chunk.accY, 0, result.accY, at, n);
+			System.arraycopy(chunk.accZ, 0, result.accZ, at, n);
+			System.arraycopy(chunk.gyroX, 0, result.gyroX, at, n);
+			System.arraycopy(chunk.gyroY, 0, result.gyroY, at, n);
+			System.arraycopy(chunk.gyroZ, 0, result.gyroZ, at, n);
+			result.size += n;
+			// Let the chunk go as soon as it has been copied
+			chunks.set(i, null);
+			sorted = sorted && isSorted(result.time, Math.max(0, at - 1), result.size);
+		}
+		if (!sorted) {
+			sortByTime(result);
+		}
+		return result;
+	}
+
+	private static boolean isSorted(long[] time, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			if (time[i] < time[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Reorder the rows by time (files that were joined out of order).
+	 * Stable, so rows with the same time keep their file order.
+	 */
+	private static void sortByTime(Result result) {
+		int n = result.size;
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		int[] scratch = new int[n];
+		long[] time = result.time;
+		// Bottom-up merge sort of the row indices
+		for (int width = 1; width < n; width <<= 1) {
+			for (int low = 0; low < n; low += width << 1) {
+				int mid = Math.min(low + width, n);
+				int high = Math.min(low + (width << 1), n);
+				int a = low, b = mid, k = low;
+				while (a < mid && b < high) {
+					scratch[k++] = (time[order[b]] < time[order[a]]) ? order[b++] : order[a++];
+				}
+				while (a < mid) {
+					scratch[k++] = order[a++];
+				}
+				while (b < high) {
+					scratch[k++] = order[b++];
+				}
+			}
+			int[] swap = order;
+			order = scratch;
+			scratch = swap;
+		}
+		long[] sortedTime = new long[result.time.length];
+		for (int i = 0; i < n; i++) {
+			sortedTime[i] = time[order[i]];
+		}
+		result.time = sortedTime;
+		result.accX = reorder(result.accX, order, n);
+		result.accY = reorder(result.accY, order, n);
+		result.accZ = reorder(result.accZ, order, n);
+		result.gyroX = reorder(result.gyroX, order, n);
+		result.gyroY = reorder(result.gyroY, order, n);
+		result.gyroZ = reorder(result.gyroZ, order, n);
+	}
+
+	private static float[] reorder(float[] values, int[] order, int n) {
+		float[] sorted = new float[values.length];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = values[order[i]];
+		}
+		return sorted;
+	}
+
+	/*
+	 * Parse every line in [start, end) of the file
+	 */
+	private Result parseChunk(FileChannel channel, long start, long end) throws IOException {
+		Result result = new Result((int) ((end - start) / BYTES_PER_ROW + 16));
+		if (end <= start) {
+			return result;
+		}
+		buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		bufOffset = start;
+		int limit = (int) (end - start);
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int lineEnd = indexOfNewline(lineStart, limit);
+			// Skip the title row and blank lines - data rows start with a digit
+			if (isDigit(buf.get(lineStart))) {
+				rowStart = lineStart;
+				parseRow(result, lineStart, lineEnd);
+			}
+			lineStart = lineEnd + 1;
+		}
+		buf = null;
+		return result;
+	}
+
+	/*
+	 * @returns the position of the next newline, or limit if the last line has none
+	 */
+	private int indexOfNewline(int from, int limit) {
+		for (int i = from; i < limit; i++) {
+			if (buf.get(i) == '\n') {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/*
+	 * @returns a description of where the row being parsed is, for error messages
+	 */
+	private String where() {
+		return "The row at byte " + (bufOffset + rowStart);
+	}
+
+	/*
+	 * Parse one row: YYYY-MM-DD hh:mm:ss.sss,accx,accy,accz,gyrx,gyry,gyrz
+	 */
+	private void parseRow(Result result, int start, int end) throws IOException {
+		// Drop the carriage return of windows line endings
+		if (end > start && buf.get(end - 1) == '\r') {
+			end--;
+		}
+		if (end - start < 24 || buf.get(start + 23) != ',') {
+			throw new IOException(where() + " does not start with a timestamp");
+		}
+		result.ensureCapacity();
+		int i = result.size;
+		try {
+			result.time[i] = timestamps.parse(buf, start);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(where() + " has a misformatted timestamp");
+		}
+		pos = start + 24;
+		result.accX[i] = parseValue(end);
+		result.accY[i] = parseValue(end);
+		result.accZ[i] = parseValue(end);
+		result.gyroX[i] = parseValue(end);
+		result.gyroY[i] = parseValue(end);
+		result.gyroZ[i] = parseValue(end);
+		result.size++;
+	}
+
+	/*
+	 * Decode the decimal number at pos and move pos past the following comma
+	 */
+	private float parseValue(int end) throws IOException {
+		int start = pos;
+		int p = pos;
+		boolean negative = false;
+		if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+			negative = buf.get(p) == '-';
+			p++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		int digitCount = 0;
+		int significant = 0;
+		byte b;
+		while (p < end && isDigit(b = buf.get(p))) {
+			if (significant < 18) {
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0) {
+					significant++;
+				}
+			} else {
+				exponent++;
+			}
+			digitCount++;
+			p++;
+		}
+		if (p < end && buf.get(p) == '.') {
+			p++;
+			while (p < end && isDigit(b = buf.get(p))) {
+				if (significant < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					if (mantissa != 0) {
+						significant++;
+					}
+					exponent--;
+				}
+				digitCount++;
+				p++;
+			}
+		}
+		if (digitCount > 0 && p < end && (buf.get(p) == 'e' || buf.get(p) == 'E')) {
+			p++;
+			boolean negativeExp = false;
+			if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+				negativeExp = buf.get(p) == '-';
+				p++;
+			}
+			int e = 0;
+			int expDigits = 0;
+			while (p < end && isDigit(b = buf.get(p))) {
+				if (e < 10000) {
+					e = e * 10 + (b - '0');
+				}
+				expDigits++;
+				p++;
+			}
+			if (expDigits == 0) {
+				digitCount = 0;
+			}
+			exponent += negativeExp ? -e : e;
+		}
+		if (p < end && buf.get(p) != ',') {
+			digitCount = 0;
+		}
+		float value;
+		if (digitCount == 0) {
+			// Not a plain decimal number (e.g. NaN) - let Java try
+			value = parseToken(start, end);
+			p = pos;
+		} else {
+			double v = mantissa;
+			if (exponent < 0) {
+				v = (-exponent < POW10.length) ? v / POW10[-exponent] : v / Math.pow(10, -exponent);
+			} else if (exponent > 0) {
+				v = (exponent < POW10.length) ? v * POW10[exponent] : v * Math.pow(10, exponent);
+			}
+			value = (float) (negative ? -v : v);
+		}
+		// Step over the separator
+		pos = p + 1;
+		return value;
+	}
+
+	/*
+	 * Slow path for values that are not plain decimals
+	 */
+	private float parseToken(int start, int end) throws IOException {
+		int p = start;
+		while (p < end && buf.get(p) != ',') {
+			p++;
+		}
+		byte[] token = new byte[p - start];
+		for (int i = 0; i < token.length; i++) {
+			token[i] = buf.get(start + i);
+		}
+		pos = p;
+		try {
+			return Float.parseFloat(new String(token, "US-ASCII").trim());
+		} catch (NumberFormatException e) {
+			throw new IOException(where() + " has a misformatted value '" + new String(token, "US-ASCII") + "'");
+		}
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+}
@@ -0,0 +1,345 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/*
+ * Binary sidecar file that caches the parsed samples of a raw data csv file
+ *
+ * The sidecar sits next to the csv (name.csv.plmcache) and holds a versioned header
+ * followed by the time column, the six channel columns and the min/max pyramid of
+ * the accelerometer magnitude:
+ *
+ *   int    magic ("PLMC")
+ *   int    version
+ *   long   length of the csv file
+ *   long   last modified time of the csv file
+ *   long   CRC32 of the csv file
+ *   int    number of samples (n)
+ *   long[n] time, float[n] AccX, AccY, AccZ, GyroX, GyroY, GyroZ
+ *   for each pyramid level (b buckets): int[b] min index, int[b] max index, float[b] mean
+ *
+ * The number of levels and buckets follows from n. All values are little endian. A sidecar is only used if it matches the csv,
+ * otherwise it is deleted and the csv is parsed again.
+ * The sidecar is not memory mapped: the columns are read through one 1 MB buffer into
+ * the arrays of the SampleStore, so a cache hit saves the parsing but still takes the
+ * heap of the samples, and no mapping keeps the file open after it is read (on Windows
+ * that would stop the sidecar from being deleted or replaced).
+ */
+public class SampleCache {
+	private static final int MAGIC = 0x504C4D43; // PLMC
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+	private static final String EXTENSION = ".plmcache";
+	// Largest region of the csv file that is mapped at once for its checksum
+	private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+	// Buffer size used when reading and writing the columns
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	/*
+	 * @returns the sidecar file for the given csv file
+	 */
+	public static File cacheFile(File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/*
+	 * Load the cached samples of the given csv file
+	 * @param source the raw data csv file
+	 * @return the samples, or null if there is no sidecar or it does not match the csv
+	 */
+	public static SampleStore load(File source) {
+		File cache = cacheFile(source);
+		if (!cache.isFile()) {
+			return null;
+		}
+		try {
+			SampleStore store = read(source, cache);
+			// Out of date - get rid of it so it is rewritten
+			if (store == null && !cache.delete()) {
+				System.out.println("Unable to delete out of date cache '" + cache.getName() + "'");
+			}
+			return store;
+		} catch (IOException e) {
+			System.out.println("Unable to read cache '" + cache.getName() + "': " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static SampleStore read(File source, File cache) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(cache, "r");
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			fill(channel, header, 0);
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				return null;
+			}
+			long length = header.getLong();
+			long modified = header.getLong();
+			long checksum = header.getLong();
+			int size = header.getInt();
+			if (size < 0 || length != source.length()
+					|| channel.size() != HEADER_SIZE + (long) size * (8 + 6 * 4) + pyramidSize(size)) {
+				return null;
+			}
+			// The csv was touched - only trust the sidecar if the contents are the same
+			if (modified != source.lastModified()) {
+				if (checksum != checksum(source)) {
+					return null;
+				}
+				// Same contents, so record the new time to save the checksum next time
+				setModified(cache, source.lastModified());
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			long offset = HEADER_SIZE;
+			long[] time = new long[size];
+			offset = read(channel, buffer, offset, time, size);
+			float[][] columns = new float[6][];
+			for (int c = 0; c < columns.length; c++) {
+				columns[c] = new float[size];
+				offset = read(channel, buffer, offset, columns[c], size);
+			}
+			SampleStore store = new SampleStore(time, columns[0], columns[1], columns[2],
+					columns[3], columns[4], columns[5], size);
+
+			int levels = MinMaxPyramid.levels(size);
+			int[][] minAt = new int[levels][], maxAt = new int[levels][];
+			float[][] mean = new float[levels][];
+			for (int level = 0; level < levels; level++) {
+				int buckets = MinMaxPyramid.buckets(size, level);
+				minAt[level] = new int[buckets];
+				maxAt[level] = new int[buckets];
+				mean[level] = new float[buckets];
+				offset = read(channel, buffer, offset, minAt[level], buckets);
+				offset = read(channel, buffer, offset, maxAt[level], buckets);
+				offset = read(channel, buffer, offset, mean[level], buckets);
+				// A damaged sidecar must not point outside of the samples
+				if (!MinMaxPyramid.inBuckets(minAt[level], size, level)
+						|| !MinMaxPyramid.inBuckets(maxAt[level], size, level)) {
+					return null;
+				}
+			}
+			store.setPyramid(new MinMaxPyramid(store.getAccelMagnitude(), size, minAt, maxAt, mean));
+			return store;
+		}
+	}
+
+	/*
+	 * Read size values starting at the given offset of the channel, a buffer at a time
+	 * @return the offset after the values
+	 */
+	private static long read(FileChannel channel, ByteBuffer buffer, long offset, long[] values, int size)
+			throws IOException {
+		for (int i = 0; i < size;) {
+			int count = Math.min(size - i, buffer.capacity() / 8);
+			buffer.clear();
+			buffer.limit(count * 8);
+			offset = fill(channel, buffer, offset);
+			buffer.flip();
+			buffer.asLongBuffer().get(values, i, count);
+			i += count;
+		}
+		return offset;
+	}
+
+	private static long read(FileChannel channel, ByteBuffer buffer, long offset, int[] values, int size)
+			throws IOException {
+		for (int i = 0; i < size;) {
+			int count = Math.min(size - i, buffer.capacity() / 4);
+			buffer.clear();
+			buffer.limit(count * 4);
+			offset = fill(channel, buffer, offset);
+			buffer.flip();
+			buffer.asIntBuffer().get(values, i, count);
+			i += count;
+		}
+		return offset;
+	}
+
+	private static long read(FileChannel channel, ByteBuffer buffer, long offset, float[] values, int size)
+			throws IOException {
+		for (int i = 0; i < size;) {
+			int count = Math.min(size - i, buffer.capacity() / 4);
+			buffer.clear();
+			buffer.limit(count * 4);
+			offset = fill(channel, buffer, offset);
+			buffer.flip();
+			buffer.asFloatBuffer().get(values, i, count);
+			i += count;
+		}
+		return offset;
+	}
+
+	/*
+	 * Read from the given offset of the channel until the buffer is full
+	 * @return the offset after the bytes read
+	 */
+	private static long fill(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset);
+			if (read < 0) {
+				throw new EOFException("the cache ends early");
+			}
+			offset += read;
+		}
+		return offset;
+	}
+
+	/*
+	 * Write a new last modified time of the csv file into the header of the sidecar.
+	 * Failures are only reported, as the sidecar is still good.
+	 */
+	private static void setModified(File cache, long modified) {
+		try (RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+				FileChannel channel = raf.getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putLong(modified);
+			buffer.flip();
+			// After the magic, version and length
+			long offset = 4 + 4 + 8;
+			while (buffer.hasRemaining()) {
+				offset += channel.write(buffer, offset);
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to update cache '" + cache.getName() + "': " + e.getMessage());
+		}
+	}
+
+	/*
+	 * @returns the bytes taken by the pyramid of a channel with size samples
+	 */
+	private static long pyramidSize(int size) {
+		long bytes = 0;
+		for (int level = 0; level < MinMaxPyramid.levels(size); level++) {
+			bytes += MinMaxPyramid.buckets(size, level) * 12L;
+		}
+		return bytes;
+	}
+
+	/*
+	 * Write the sidecar for the given csv file.
+	 * Failures are only reported, as the cache is just a speed up.
+	 * @param source the raw data csv file
+	 * @param store the samples parsed from it
+	 */
+	public static void save(File source, SampleStore store) {
+		File cache = cacheFile(source);
+		File temp = new File(cache.getPath() + ".tmp");
+		try {
+			long modified = source.lastModified();
+			long length = source.length();
+			long checksum = checksum(source);
+			try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+					FileChannel channel = raf.getChannel()) {
+				channel.truncate(0);
+				ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putLong(length);
+				buffer.putLong(modified);
+				buffer.putLong(checksum);
+				buffer.putInt(store.size());
+				write(channel, buffer, store.getTimes(), store.size());
+				write(channel, buffer, store.getAccX(), store.size());
+				write(channel, buffer, store.getAccY(), store.size());
+				write(channel, buffer, store.getAccZ(), store.size());
+				write(channel, buffer, store.getGyroX(), store.size());
+				write(channel, buffer, store.getGyroY(), store.size());
+				write(channel, buffer, store.getGyroZ(), store.size());
+				MinMaxPyramid pyramid = store.getPyramid();
+				for (int level = 0; level < pyramid.levels(); level++) {
+					int buckets = pyramid.getMean(level).length;
+					write(channel, buffer, pyramid.getMinAt(level), buckets);
+					write(channel, buffer, pyramid.getMaxAt(level), buckets);
+					write(channel, buffer, pyramid.getMean(level), buckets);
+				}
+				drain(channel, buffer);
+			}
+			// Replace the old sidecar in one step so a half written file is never read
+			Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			if (temp.exists() && !temp.delete()) {
+				System.out.println("Unable to delete '" + temp.getName() + "'");
+			}
+			System.out.println("Unable to write cache '" + cache.getName() + "': " + e.getMessage());
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long[] values, int size) throws IOException {
+		int i = 0;
+		while (i < size) {
+			int count = Math.min(size - i, buffer.remaining() / 8);
+			if (count == 0) {
+				drain(channel, buffer);
+				continue;
+			}
+			buffer.asLongBuffer().put(values, i, count);
+			buffer.position(buffer.position() + count * 8);
+			i += count;
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, int[] values, int size) throws IOException {
+		int i = 0;
+		while (i < size) {
+			int count = Math.min(size - i, buffer.remaining() / 4);
+			if (count == 0) {
+				drain(channel, buffer);
+				continue;
+			}
+			buffer.asIntBuffer().put(values, i, count);
+			buffer.position(buffer.position() + count * 4);
+			i += count;
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, float[] values, int size) throws IOException {
+		int i = 0;
+		while (i < size) {
+			int count = Math.min(size - i, buffer.remaining() / 4);
+			if (count == 0) {
+				drain(channel, buffer);
+				continue;
+			}
+			buffer.asFloatBuffer().put(values, i, count);
+			buffer.position(buffer.position() + count * 4);
+			i += count;
+		}
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*
+	 * @returns the CRC32 of the whole file
+	 */
+	public static long checksum(File source) throws IOException {
+		CRC32 crc = new CRC32();
+		try (RandomAccessFile raf = new RandomAccessFile(source, "r");
+				FileChannel channel = raf.getChannel()) {
+			long length = channel.size();
+			for (long offset = 0; offset < length; offset += SEGMENT_SIZE) {
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						Math.min(SEGMENT_SIZE, length - offset)));
+			}
+		}
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/*
+ * Column store for the raw samples of a recording
+ *
+ * Timestamps are kept as epoch millis in a long[] and every channel as a float[],
+ * so a sample costs 32 bytes instead of a boxed Date and Double per point.
+ * Derived channels (magnitudes) and the min/max pyramid of the accelerometer magnitude
+ * are computed the first time they are asked for.
+ * The arrays handed out by the getters are shared and must not be modified.
+ */
+public class SampleStore {
+	private final long[] time; // epoch millis, in increasing order
+	private final float[] accX, accY, accZ; // accelerometer (g)
+	private final float[] gyroX, gyroY, gyroZ; // gyroscope
+	private final int size;
+	// Derived channels, computed on first use
+	private volatile float[] accelMagnitude;
+	private volatile float[] gyroMagnitude;
+	// Min/max pyramid of the accelerometer magnitude, built on first use or read from the cache
+	private volatile MinMaxPyramid pyramid;
+
+	SampleStore(long[] time, float[] accX, float[] accY, float[] accZ,
+			float[] gyroX, float[] gyroY, float[] gyroZ, int size) {
+		this.size = size;
+		this.time = trim(time, size);
+		this.accX = trim(accX, size);
+		this.accY = trim(accY, size);
+		this.accZ = trim(accZ, size);
+		this.gyroX = trim(gyroX, size);
+		this.gyroY = trim(gyroY, size);
+		this.gyroZ = trim(gyroZ, size);
+	}
+
+	/*
+	 * Create a store from the columns of a parsed raw data file
+	 */
+	SampleStore(RawDataParser.Result raw) {
+		this(raw.time, raw.accX, raw.accY, raw.accZ, raw.gyroX, raw.gyroY, raw.gyroZ, raw.size);
+	}
+
+	private static long[] trim(long[] values, int size) {
+		return (values.length == size) ? values : Arrays.copyOf(values, size);
+	}
+
+	private static float[] trim(float[] values, int size) {
+		return (values.length == size) ? values : Arrays.copyOf(values, size);
+	}
+
+	/*
+	 * @returns the number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * @returns the time of the given sample in epoch millis
+	 */
+	public long getTime(int index) {
+		return time[index];
+	}
+
+	/*
+	 * @returns the time of the first sample in epoch millis
+	 */
+	public long getStartTime() {
+		return (size > 0) ? time[0] : 0;
+	}
+
+	/*
+	 * @returns the time of the last sample in epoch millis
+	 */
+	public long getEndTime() {
+		return (size > 0) ? time[size - 1] : 0;
+	}
+
+	/*
+	 * @returns the average number of samples per second
+	 */
+	public double getSampleRate() {
+		return (size > 1 && time[size - 1] > time[0]) ? (size - 1) * 1000.0 / (time[size - 1] - time[0]) : 0;
+	}
+
+	/*
+	 * @returns the index of the first sample at or after the given time
+	 * (size() if every sample is earlier)
+	 */
+	public int indexOf(long millis) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (time[mid] < millis) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public long[] getTimes() {
+		return time;
+	}
+
+	public float[] getAccX() {
+		return accX;
+	}
+
+	public float[] getAccY() {
+		return accY;
+	}
+
+	public float[] getAccZ() {
+		return accZ;
+	}
+
+	public float[] getGyroX() {
+		return gyroX;
+	}
+
+	public float[] getGyroY() {
+		return gyroY;
+	}
+
+	public float[] getGyroZ() {
+		return gyroZ;
+	}
+
+	/*
+	 * @returns the magnitude of the accelerometer vector for every sample
+	 */
+	public float[] getAccelMagnitude() {
+		float[] m = accelMagnitude;
+		if (m == null) {
+			m = magnitude(accX, accY, accZ);
+			accelMagnitude = m;
+		}
+		return m;
+	}
+
+	/*
+	 * @returns the magnitude of the gyroscope vector for every sample
+	 */
+	public float[] getGyroMagnitude() {
+		float[] m = gyroMagnitude;
+		if (m == null) {
+			m = magnitude(gyroX, gyroY, gyroZ);
+			gyroMagnitude = m;
+		}
+		return m;
+	}
+
+	/*
+	 * @returns the min/max pyramid of the accelerometer magnitude
+	 */
+	public MinMaxPyramid getPyramid() {
+		MinMaxPyramid p = pyramid;
+		if (p == null) {
+			p = new MinMaxPyramid(getAccelMagnitude(), size);
+			pyramid = p;
+		}
+		return p;
+	}
+
+	/*
+	 * Use a pyramid read back from the cache
+	 */
+	void setPyramid(MinMaxPyramid pyramid) {
+		this.pyramid = pyramid;
+	}
+
+	private float[] magnitude(float[] x, float[] y, float[] z) {
+		return SignalKernels.magnitude(x, y, z, size);
+	}
+}
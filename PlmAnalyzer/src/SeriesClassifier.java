@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Streaming PLM series classifier
+ *
+ * Movements are fed in time order. Consecutive movements whose onset to onset
+ * interval is within the interval bounds form a series; a series with at least the
+ * minimum number of movements is periodic and its movements are labelled PLM (P),
+ * every other movement is labelled isolated (I). Rejected (R) and user added (U)
+ * movements keep their type and end the series they interrupt.
+ *
+ * Each movement is looked at once, so a whole night is relabelled in a few
+ * milliseconds and the classification can be re-run whenever a parameter changes.
+ */
+public class SeriesClassifier {
+	// Default series parameters
+	public static final int DEFAULT_MIN_SERIES_LENGTH = 4;
+	public static final double DEFAULT_MIN_INTERVAL = 5.0; // s
+	public static final double DEFAULT_MAX_INTERVAL = 90.0; // s
+
+	private final int minSeriesLength; // movements needed for a periodic series
+	private final long minInterval; // shortest onset to onset interval in a series (ms)
+	private final long maxInterval; // longest onset to onset interval in a series (ms)
+
+	// Classified movements, the ones of the open series are still labelled as they came in
+	private final List<Movement> movements = new ArrayList<Movement>();
+	// Index of the first movement of the open series and its length (0 if there is none)
+	private int seriesStart;
+	private int seriesLength;
+	// Onset of the last movement of the open series
+	private long lastOnset;
+
+	/*
+	 * Create a classifier with the default series parameters
+	 */
+	public SeriesClassifier() {
+		this(DEFAULT_MIN_SERIES_LENGTH, DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+	}
+
+	/*
+	 * @param minSeriesLength the number of movements needed for a periodic series
+	 * @param minInterval the shortest onset to onset interval (s) between movements of a series
+	 * @param maxInterval the longest onset to onset interval (s) between movements of a series
+	 */
+	public SeriesClassifier(int minSeriesLength, double minInterval, double maxInterval) {
+		this.minSeriesLength = minSeriesLength;
+		this.minInterval = Math.round(minInterval * 1000);
+		this.maxInterval = Math.round(maxInterval * 1000);
+	}
+
+	/*
+	 * @returns the number of movements needed for a periodic series
+	 */
+	public int getMinSeriesLength() {
+		return minSeriesLength;
+	}
+
+	/*
+	 * @returns the shortest onset to onset interval (s) of a series
+	 */
+	public double getMinInterval() {
+		return minInterval / 1000.0;
+	}
+
+	/*
+	 * @returns the longest onset to onset interval (s) of a series
+	 */
+	public double getMaxInterval() {
+		return maxInterval / 1000.0;
+	}
+
+	/*
+	 * Relabel a whole list of movements
+	 * @param movements the movements in time order
+	 * @return a new list with the P and I movements relabelled
+	 */
+	public List<Movement> classify(List<Movement> movements) {
+		SeriesClassifier run = new SeriesClassifier(minSeriesLength, getMinInterval(), getMaxInterval());
+		for (Movement m : movements) {
+			run.accept(m);
+		}
+		return run.finish();
+	}
+
+	/*
+	 * Feed the next movement
+	 */
+	public void accept(Movement m) {
+		String type = m.getType();
+		if (!type.equals("P") && !type.equals("I")) {
+			// Rejected and user added movements are left alone and break the series
+			close();
+			movements.add(m);
+			return;
+		}
+		long onset = m.getTime().getTime();
+		long interval = onset - lastOnset;
+		if (seriesLength > 0 && (interval < minInterval || interval > maxInterval)) {
+			close();
+		}
+		if (seriesLength == 0) {
+			seriesStart = movements.size();
+		}
+		seriesLength++;
+		lastOnset = onset;
+		if (seriesLength > minSeriesLength) {
+			// The series is already long enough, no need to wait for it to end
+			movements.add(m.withType("P"));
+		} else {
+			movements.add(m);
+			if (seriesLength == minSeriesLength) {
+				label(seriesStart, movements.size(), "P");
+			}
+		}
+	}
+
+	/*
+	 * Close the open series
+	 * @return every movement fed so far, relabelled
+	 */
+	public List<Movement> finish() {
+		close();
+		return movements;
+	}
+
+	private void close() {
+		if (seriesLength > 0 && seriesLength < minSeriesLength) {
+			label(seriesStart, movements.size(), "I");
+		}
+		seriesLength = 0;
+	}
+
+	private void label(int from, int to, String type) {
+		for (int i = from; i < to; i++) {
+			movements.set(i, movements.get(i).withType(type));
+		}
+	}
+}
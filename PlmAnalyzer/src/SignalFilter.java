@@ -0,0 +1,30 @@
+/*
+ * A streaming filter stage for a channel
+ *
+ * Samples go in one at a time, in time order, and each call returns the filtered
+ * value for that sample. A stage only keeps the state it needs (a ring buffer of
+ * its window at most), so a whole night is filtered in one pass with O(window) memory.
+ */
+public interface SignalFilter {
+
+	/*
+	 * Feed the next sample
+	 * @return the filtered value of the sample
+	 */
+	float apply(float value);
+
+	/*
+	 * Forget every sample fed so far
+	 */
+	void reset();
+
+	/*
+	 * Filter the samples [from, to) of a channel
+	 * @param out receives to - from values starting at index 0, may be the input when from is 0
+	 */
+	default void apply(float[] in, int from, int to, float[] out) {
+		for (int i = from; i < to; i++) {
+			out[i - from] = apply(in[i]);
+		}
+	}
+}
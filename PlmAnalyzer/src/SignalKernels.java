@@ -0,0 +1,149 @@
+/*
+ * Kernels that compute derived channels over the primitive sample columns
+ *
+ * Every kernel works on the samples [from, to) of its input columns and writes its
+ * results to the output array starting at index 0. Each has two paths:
+ * - the float path keeps the arithmetic in float (the square root is still taken in
+ *   double by Math.sqrt), and the energy sums are split into LANES partial sums so
+ *   the additions do not wait on each other
+ * - the double path works one sample at a time in double precision
+ * Neither path is written with SIMD in mind, whether the JIT vectorizes either one
+ * depends on the JVM. The float path is used unless the plm.doubleKernels system
+ * property is true. KernelBenchmark compares the two, so it measures float against
+ * double arithmetic, not vector against scalar code.
+ * jerk and windowEnergy are only called by KernelBenchmark so far.
+ */
+public class SignalKernels {
+	// Partial sums kept by the float path of windowEnergy
+	static final int LANES = 8;
+	// Use the double path (-Dplm.doubleKernels=true)
+	private static final boolean DOUBLE = Boolean.getBoolean("plm.doubleKernels");
+
+	/*
+	 * Magnitude of a three axis vector, sqrt(x*x + y*y + z*z)
+	 * @param out receives to - from values
+	 */
+	public static void magnitude(float[] x, float[] y, float[] z, int from, int to, float[] out) {
+		if (DOUBLE) {
+			magnitudeDouble(x, y, z, from, to, out);
+		} else {
+			magnitudeFloat(x, y, z, from, to, out);
+		}
+	}
+
+	/*
+	 * @returns the magnitude of a three axis vector for the first size samples
+	 */
+	public static float[] magnitude(float[] x, float[] y, float[] z, int size) {
+		float[] out = new float[size];
+		magnitude(x, y, z, 0, size, out);
+		return out;
+	}
+
+	/*
+	 * Jerk of a channel, the change per second from the previous sample.
+	 * The first sample of the columns, and samples with no time step, have a jerk of 0.
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param out receives to - from values
+	 */
+	public static void jerk(long[] time, float[] signal, int from, int to, float[] out) {
+		if (DOUBLE) {
+			jerkDouble(time, signal, from, to, out);
+		} else {
+			jerkFloat(time, signal, from, to, out);
+		}
+	}
+
+	/*
+	 * Energy (sum of squares) of consecutive windows of a channel.
+	 * A last partial window is summed as well.
+	 * @param window samples per window
+	 * @param out receives one value per window
+	 * @return the number of windows
+	 */
+	public static int windowEnergy(float[] signal, int from, int to, int window, float[] out) {
+		if (DOUBLE) {
+			return windowEnergyDouble(signal, from, to, window, out);
+		}
+		return windowEnergyFloat(signal, from, to, window, out);
+	}
+
+	/*
+	 * @returns the number of windows windowEnergy writes for the given samples
+	 */
+	public static int windows(int from, int to, int window) {
+		return (to - from + window - 1) / window;
+	}
+
+	static void magnitudeDouble(float[] x, float[] y, float[] z, int from, int to, float[] out) {
+		for (int i = from; i < to; i++) {
+			double a = x[i], b = y[i], c = z[i];
+			out[i - from] = (float) Math.sqrt(a * a + b * b + c * c);
+		}
+	}
+
+	static void magnitudeFloat(float[] x, float[] y, float[] z, int from, int to, float[] out) {
+		for (int i = from; i < to; i++) {
+			out[i - from] = (float) Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+		}
+	}
+
+	static void jerkDouble(long[] time, float[] signal, int from, int to, float[] out) {
+		for (int i = from; i < to; i++) {
+			long dt = (i > 0) ? time[i] - time[i - 1] : 0;
+			out[i - from] = (dt > 0) ? (float) (((double) signal[i] - signal[i - 1]) * 1000.0 / dt) : 0f;
+		}
+	}
+
+	static void jerkFloat(long[] time, float[] signal, int from, int to, float[] out) {
+		int i = from;
+		if (i == 0 && i < to) {
+			// No previous sample
+			out[0] = 0f;
+			i++;
+		}
+		for (; i < to; i++) {
+			long dt = time[i] - time[i - 1];
+			out[i - from] = (dt > 0) ? (signal[i] - signal[i - 1]) * 1000f / dt : 0f;
+		}
+	}
+
+	static int windowEnergyDouble(float[] signal, int from, int to, int window, float[] out) {
+		int w = 0;
+		for (int start = from; start < to; start += window, w++) {
+			int end = Math.min(to, start + window);
+			double sum = 0;
+			for (int i = start; i < end; i++) {
+				sum += (double) signal[i] * signal[i];
+			}
+			out[w] = (float) sum;
+		}
+		return w;
+	}
+
+	static int windowEnergyFloat(float[] signal, int from, int to, int window, float[] out) {
+		int w = 0;
+		for (int start = from; start < to; start += window, w++) {
+			int end = Math.min(to, start + window);
+			// One partial sum per lane, so the additions do not wait on each other
+			float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f, s4 = 0f, s5 = 0f, s6 = 0f, s7 = 0f;
+			int i = start;
+			for (; i + LANES <= end; i += LANES) {
+				s0 += signal[i] * signal[i];
+				s1 += signal[i + 1] * signal[i + 1];
+				s2 += signal[i + 2] * signal[i + 2];
+				s3 += signal[i + 3] * signal[i + 3];
+				s4 += signal[i + 4] * signal[i + 4];
+				s5 += signal[i + 5] * signal[i + 5];
+				s6 += signal[i + 6] * signal[i + 6];
+				s7 += signal[i + 7] * signal[i + 7];
+			}
+			float sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+			for (; i < end; i++) {
+				sum += signal[i] * signal[i];
+			}
+			out[w] = sum;
+		}
+		return w;
+	}
+}
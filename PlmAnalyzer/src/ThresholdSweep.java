@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/*
+ * Threshold sensitivity sweep
+ *
+ * Detects and classifies the movements of a recording for every combination of a
+ * list of thresholds and minimum durations. The grid is split into slices of
+ * neighbouring thresholds that run in parallel. Each slice makes one pass over the
+ * samples above its lowest threshold and feeds every detector of the slice from it,
+ * instead of running the detection once per setting.
+ * The slices check for cancellation as they go and report each setting they finish.
+ */
+public class ThresholdSweep {
+
+	/*
+	 * The outcome of one setting of the grid
+	 */
+	public static class Result {
+		private final double threshold;
+		private final double minDuration;
+		private final int movements;
+		private final int plms;
+		private final double eph;
+
+		Result(double threshold, double minDuration, int movements, int plms, double eph) {
+			this.threshold = threshold;
+			this.minDuration = minDuration;
+			this.movements = movements;
+			this.plms = plms;
+			this.eph = eph;
+		}
+
+		/*
+		 * @returns the detection threshold (g)
+		 */
+		public double getThreshold() {
+			return threshold;
+		}
+
+		/*
+		 * @returns the minimum movement duration (s)
+		 */
+		public double getMinDuration() {
+			return minDuration;
+		}
+
+		/*
+		 * @returns the number of movements detected
+		 */
+		public int getMovements() {
+			return movements;
+		}
+
+		/*
+		 * @returns the number of movements labelled PLM
+		 */
+		public int getPlms() {
+			return plms;
+		}
+
+		/*
+		 * @returns the PLM events per hour of the recording
+		 */
+		public double getEph() {
+			return eph;
+		}
+	}
+
+	/*
+	 * Sweeps a slice of neighbouring thresholds
+	 */
+	private class SliceTask extends RecursiveTask<List<Result>> {
+		private static final long serialVersionUID = 1L;
+		private final long[] time;
+		private final PeakIndex peaks;
+		private final int from, to;
+
+		SliceTask(long[] time, PeakIndex peaks, int from, int to) {
+			this.time = time;
+			this.peaks = peaks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<Result> compute() {
+			return sweep(time, peaks, from, to);
+		}
+	}
+
+	private final double[] thresholds; // g, increasing
+	private final double[] minDurations; // s
+	private final SeriesClassifier classifier;
+	// Set for a run: whether to stop, and who is told of the settings finished so far
+	private BooleanSupplier cancelled = () -> false;
+	private IntConsumer progress = done -> { };
+	private final AtomicInteger finished = new AtomicInteger();
+
+	/*
+	 * @param thresholds the detection thresholds (g)
+	 * @param minDurations the minimum movement durations (s)
+	 * @param classifier labels the movements of each setting
+	 */
+	public ThresholdSweep(double[] thresholds, double[] minDurations, SeriesClassifier classifier) {
+		this.thresholds = thresholds.clone();
+		Arrays.sort(this.thresholds);
+		this.minDurations = minDurations.clone();
+		this.classifier = classifier;
+	}
+
+	/*
+	 * @returns the values from, from + step, ... up to and including to
+	 */
+	public static double[] range(double from, double to, double step) {
+		if (step <= 0 || to < from) {
+			throw new IllegalArgumentException("the range " + from + " to " + to + " by " + step + " is empty");
+		}
+		int count = (int) Math.floor((to - from) / step + 1e-9) + 1;
+		double[] values = new double[count];
+		for (int i = 0; i < count; i++) {
+			// Round away the drift of adding up the step
+			values[i] = Math.round((from + i * step) * 1e6) / 1e6;
+		}
+		return values;
+	}
+
+	/*
+	 * @returns the number of settings in the grid
+	 */
+	public int size() {
+		return thresholds.length * minDurations.length;
+	}
+
+	/*
+	 * Run the sweep on the given pool
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param peaks the peak index of the channel to compare against the thresholds
+	 * @param pool the pool that runs the slices
+	 * @return a result per setting, by threshold then minimum duration
+	 */
+	public List<Result> run(long[] time, PeakIndex peaks, ForkJoinPool pool) {
+		return run(time, peaks, pool, () -> false, done -> { });
+	}
+
+	/*
+	 * Run the sweep on the given pool, stopping early if asked to
+	 * @param cancelled checked by the slices as they go, the results are incomplete once it is true
+	 * @param progress given the number of settings finished, from the threads of the pool
+	 * @return a result per setting, by threshold then minimum duration
+	 */
+	public List<Result> run(long[] time, PeakIndex peaks, ForkJoinPool pool, BooleanSupplier cancelled,
+			IntConsumer progress) {
+		this.cancelled = cancelled;
+		this.progress = progress;
+		finished.set(0);
+		// A few slices per thread, as the low thresholds have more samples to look at
+		int slices = Math.max(1, Math.min(thresholds.length, pool.getParallelism() * 4));
+		List<SliceTask> tasks = new ArrayList<SliceTask>(slices);
+		for (int s = 0; s < slices; s++) {
+			SliceTask task = new SliceTask(time, peaks, thresholds.length * s / slices,
+					thresholds.length * (s + 1) / slices);
+			tasks.add(task);
+			pool.execute(task);
+		}
+		List<Result> results = new ArrayList<Result>(size());
+		for (SliceTask task : tasks) {
+			results.addAll(task.join());
+		}
+		return results;
+	}
+
+	/*
+	 * Sweep the thresholds [from, to) with every minimum duration
+	 */
+	private List<Result> sweep(long[] time, PeakIndex peaks, int from, int to) {
+		List<Result> results = new ArrayList<Result>((to - from) * minDurations.length);
+		if (from >= to) {
+			return results;
+		}
+		MovementDetector[][] detectors = new MovementDetector[to - from][minDurations.length];
+		for (int t = from; t < to; t++) {
+			for (int d = 0; d < minDurations.length; d++) {
+				detectors[t - from][d] = new MovementDetector(thresholds[t], MovementDetector.DEFAULT_MERGE_GAP,
+						Math.round(minDurations[d] * 1000), MovementDetector.DEFAULT_MAX_DURATION);
+			}
+		}
+
+		// One pass over the samples above the lowest threshold of the slice.
+		// A detector only needs the samples above its own threshold.
+		float[] signal = peaks.getSignal();
+		int size = peaks.size();
+		double lowest = thresholds[from];
+		int i = peaks.nextAbove(0, lowest);
+		while (i >= 0) {
+			if (cancelled.getAsBoolean()) {
+				return results;
+			}
+			while (i < size && signal[i] > lowest) {
+				float value = signal[i];
+				for (int t = from; t < to && thresholds[t] < value; t++) {
+					for (MovementDetector detector : detectors[t - from]) {
+						detector.accept(time[i], value);
+					}
+				}
+				i++;
+			}
+			i = peaks.nextAbove(i, lowest);
+		}
+
+		double hours = (size > 0) ? (time[size - 1] - time[0]) / 3600000.0 : 0;
+		for (int t = from; t < to; t++) {
+			for (int d = 0; d < minDurations.length; d++) {
+				if (cancelled.getAsBoolean()) {
+					return results;
+				}
+				List<Movement> movements = classifier.classify(detectors[t - from][d].finish());
+				int plms = 0;
+				for (Movement m : movements) {
+					if (m.getType().equals("P")) {
+						plms++;
+					}
+				}
+				results.add(new Result(thresholds[t], minDurations[d], movements.size(), plms,
+						(hours > 0) ? plms / hours : 0.0));
+				progress.accept(finished.incrementAndGet());
+			}
+		}
+		return results;
+	}
+}
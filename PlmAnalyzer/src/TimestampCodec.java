@@ -0,0 +1,213 @@
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/*
+ * Parses and formats the fixed timestamp layout used by the device files
+ * (yyyy-MM-dd HH:mm:ss.SSS, local time) directly to and from epoch millis
+ *
+ * Digits are decoded and encoded with plain arithmetic. The epoch millis of the
+ * current day's midnight is cached, so consecutive rows on the same date only cost
+ * a few additions. Days with a daylight saving transition fall back to a Calendar.
+ *
+ * A codec keeps state between calls and must only be used by one thread;
+ * local() hands out one codec per thread.
+ */
+public class TimestampCodec {
+	// The layout and its length in characters
+	public static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+	public static final int LENGTH = 23;
+	private static final long DAY = 86400000L;
+	// One codec per thread for formatting
+	private static final ThreadLocal<TimestampCodec> LOCAL = new ThreadLocal<TimestampCodec>() {
+		@Override
+		protected TimestampCodec initialValue() {
+			return new TimestampCodec();
+		}
+	};
+
+	private final TimeZone zone;
+	// Date (yyyyMMdd) of the last parsed timestamp and the epoch millis of its midnight
+	private int parseDay = -1;
+	private long parseMidnight;
+	// Set if the parsed day has a daylight saving transition
+	private boolean parseDayShifts;
+	// Local day (millis since the epoch at local midnight) of the last formatted timestamp
+	private long formatDay = Long.MIN_VALUE;
+	private final char[] chars = new char[LENGTH];
+	// Only needed on daylight saving days
+	private Calendar calendar;
+
+	/*
+	 * Create a codec for the default time zone
+	 */
+	public TimestampCodec() {
+		this(TimeZone.getDefault());
+	}
+
+	/*
+	 * Create a codec for the given time zone
+	 */
+	public TimestampCodec(TimeZone zone) {
+		this.zone = zone;
+		chars[4] = '-';
+		chars[7] = '-';
+		chars[10] = ' ';
+		chars[13] = ':';
+		chars[16] = ':';
+		chars[19] = '.';
+	}
+
+	/*
+	 * @returns the codec for the calling thread
+	 */
+	public static TimestampCodec local() {
+		return LOCAL.get();
+	}
+
+	/*
+	 * Decode the timestamp starting at the given position of the buffer
+	 * @return the epoch millis
+	 * @throws IllegalArgumentException if the timestamp is misformatted
+	 */
+	public long parse(ByteBuffer buf, int p) {
+		return toMillis(digits(buf, p, 4), digits(buf, p + 5, 2), digits(buf, p + 8, 2),
+				digits(buf, p + 11, 2), digits(buf, p + 14, 2), digits(buf, p + 17, 2),
+				digits(buf, p + 20, 3));
+	}
+
+	/*
+	 * Decode the timestamp starting at the given position of the text
+	 * @return the epoch millis
+	 * @throws IllegalArgumentException if the timestamp is misformatted
+	 */
+	public long parse(CharSequence text, int p) {
+		if (text.length() < p + LENGTH) {
+			throw new IllegalArgumentException("'" + text + "' is too short for " + PATTERN);
+		}
+		return toMillis(digits(text, p, 4), digits(text, p + 5, 2), digits(text, p + 8, 2),
+				digits(text, p + 11, 2), digits(text, p + 14, 2), digits(text, p + 17, 2),
+				digits(text, p + 20, 3));
+	}
+
+	private static int digits(ByteBuffer buf, int p, int count) {
+		int value = 0;
+		for (int i = 0; i < count; i++) {
+			int d = buf.get(p + i) - '0';
+			if (d < 0 || d > 9) {
+				throw new IllegalArgumentException("misformatted timestamp");
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	private static int digits(CharSequence text, int p, int count) {
+		int value = 0;
+		for (int i = 0; i < count; i++) {
+			int d = text.charAt(p + i) - '0';
+			if (d < 0 || d > 9) {
+				throw new IllegalArgumentException("misformatted timestamp '" + text + "'");
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	private long toMillis(int year, int month, int day, int hour, int minute, int second, int milli) {
+		int ymd = year * 10000 + month * 100 + day;
+		if (ymd != parseDay) {
+			if (month < 1 || month > 12 || day < 1 || day > 31) {
+				throw new IllegalArgumentException("misformatted date " + ymd);
+			}
+			long localMidnight = daysFromCivil(year, month, day) * DAY;
+			parseMidnight = toUtc(localMidnight);
+			parseDayShifts = toUtc(localMidnight + DAY) - parseMidnight != DAY;
+			parseDay = ymd;
+		}
+		if (parseDayShifts) {
+			// Let the calendar deal with the daylight saving transition
+			if (calendar == null) {
+				calendar = Calendar.getInstance(zone);
+			}
+			calendar.clear();
+			calendar.set(year, month - 1, day, hour, minute, second);
+			calendar.set(Calendar.MILLISECOND, milli);
+			return calendar.getTimeInMillis();
+		}
+		return parseMidnight + ((hour * 60L + minute) * 60L + second) * 1000L + milli;
+	}
+
+	/*
+	 * Convert local wall clock millis to epoch millis
+	 */
+	private long toUtc(long local) {
+		int offset = zone.getOffset(local - zone.getRawOffset());
+		return local - zone.getOffset(local - offset);
+	}
+
+	/*
+	 * Encode the given time
+	 */
+	public String format(Date date) {
+		return format(date.getTime());
+	}
+
+	/*
+	 * Encode the given epoch millis
+	 */
+	public String format(long millis) {
+		long local = millis + zone.getOffset(millis);
+		long day = Math.floorDiv(local, DAY);
+		if (day != formatDay) {
+			// Only work out the date when it changes
+			long[] ymd = civilFromDays(day);
+			put(ymd[0], 0, 4);
+			put(ymd[1], 5, 2);
+			put(ymd[2], 8, 2);
+			formatDay = day;
+		}
+		long time = local - day * DAY;
+		put(time / 3600000L, 11, 2);
+		put(time / 60000L % 60, 14, 2);
+		put(time / 1000L % 60, 17, 2);
+		put(time % 1000L, 20, 3);
+		return new String(chars);
+	}
+
+	private void put(long value, int p, int count) {
+		for (int i = p + count - 1; i >= p; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/*
+	 * Days since 1970-01-01 of the given date (proleptic Gregorian)
+	 */
+	private static long daysFromCivil(long year, int month, int day) {
+		year -= (month <= 2) ? 1 : 0;
+		long era = Math.floorDiv(year, 400);
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/*
+	 * Year, month and day of the given days since 1970-01-01
+	 */
+	private static long[] civilFromDays(long days) {
+		days += 719468;
+		long era = Math.floorDiv(days, 146097);
+		long dayOfEra = days - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		long month = mp + ((mp < 10) ? 3 : -9);
+		long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+		return new long[] { year, month, day };
+	}
+}
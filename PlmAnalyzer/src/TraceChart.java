@@ -0,0 +1,307 @@
+import java.util.Date;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.geometry.Side;
+import javafx.scene.Cursor;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/*
+ * Chart of the accelerometer trace drawn onto a Canvas
+ *
+ * A LineChart keeps a data item per point and lays out a node per point when symbols
+ * are on. This chart keeps no nodes for the data at all: every frame the samples in view
+ * are reduced with the MinMaxPyramid to at most 4 points per pixel and drawn straight
+ * onto a canvas over the shaded movement spans, followed by the movement onsets and the
+ * threshold line, in one pass.
+ * The scales are a DateAxis and NumberAxis with fixed bounds, so the chart reads and
+ * converts positions the same way as the line chart.
+ *
+ * Dragging the plot pans the view, dragging the threshold line moves the threshold and
+ * scrolling zooms around the mouse. Changes only request a layout, so the chart is
+ * drawn at most once per pulse.
+ */
+@SuppressWarnings("restriction")
+public class TraceChart extends Region {
+	// Pixels either side of the threshold line that pick it up
+	private static final double GRAB = 4;
+	// Zoom per scroll step
+	private static final double ZOOM = 1.25;
+	// Narrowest view (ms)
+	private static final long MIN_SPAN = 100;
+	private static final Color TRACE = Color.web("#f3622d");
+	private static final Color THRESHOLD = Color.BLACK;
+
+	private final DateAxis xAxis;
+	private final NumberAxis yAxis;
+	private final Canvas canvas = new Canvas();
+	private final DoubleProperty threshold = new SimpleDoubleProperty(this, "threshold", 1.0);
+	// The trace
+	private long[] time = new long[0];
+	private MinMaxPyramid pyramid;
+	private int size;
+	// Movement spans, onsets and types
+	private EventSpans events = EventSpans.EMPTY;
+	// Points of the last frame, kept so drawing a frame does not allocate
+	private long[] pointTime = new long[0];
+	private float[] pointValue = new float[0];
+	private double[] runs = new double[0];
+	// Mouse drag state
+	private boolean draggingThreshold;
+	private double pressX;
+	private long pressLower, pressUpper;
+
+	/*
+	 * @param xAxis the time axis, its bounds are the view
+	 * @param yAxis the force axis
+	 */
+	public TraceChart(DateAxis xAxis, NumberAxis yAxis) {
+		this.xAxis = xAxis;
+		this.yAxis = yAxis;
+		xAxis.setSide(Side.BOTTOM);
+		yAxis.setSide(Side.LEFT);
+		xAxis.setAutoRanging(false);
+		yAxis.setAutoRanging(false);
+		xAxis.setAnimated(false);
+		yAxis.setAnimated(false);
+		// The axis needs bounds before the first layout
+		xAxis.setLowerBound(new Date(0));
+		xAxis.setUpperBound(new Date(MIN_SPAN));
+		getChildren().addAll(canvas, xAxis, yAxis);
+
+		threshold.addListener(o -> requestLayout());
+		canvas.setCursor(Cursor.CROSSHAIR);
+		canvas.setOnMouseMoved(e -> canvas.setCursor(nearThreshold(e.getY()) ? Cursor.V_RESIZE : Cursor.CROSSHAIR));
+		canvas.setOnMousePressed(this::pressed);
+		canvas.setOnMouseDragged(this::dragged);
+		canvas.setOnMouseReleased(e -> draggingThreshold = false);
+		canvas.setOnScroll(this::scrolled);
+	}
+
+	/*
+	 * Show a trace and fit the view to all of it
+	 * @param time the sample times (epoch millis, increasing)
+	 * @param pyramid the pyramid of the channel to draw
+	 */
+	public void setTrace(long[] time, MinMaxPyramid pyramid) {
+		this.time = time;
+		this.pyramid = pyramid;
+		this.size = pyramid.size();
+		if (size > 0) {
+			int[] extremes = new int[2];
+			pyramid.extremes(0, size, extremes);
+			float[] signal = pyramid.getSignal();
+			yAxis.setLowerBound(Math.min(0, Math.floor(signal[extremes[0]])));
+			yAxis.setUpperBound(Math.max(1, Math.ceil(signal[extremes[1]])));
+			setWindow(time[0], time[size - 1]);
+		}
+		requestLayout();
+	}
+
+	/*
+	 * Show the spans and onsets of the given movements
+	 */
+	public void setEvents(EventSpans events) {
+		this.events = events;
+		requestLayout();
+	}
+
+	/*
+	 * Show the time span [from, to], kept within the trace
+	 */
+	public void setWindow(long from, long to) {
+		if (size > 0) {
+			long start = time[0], end = time[size - 1];
+			long span = Math.max(MIN_SPAN, Math.min(to - from, end - start));
+			from = Math.max(from, start);
+			to = from + span;
+			if (to > end) {
+				to = Math.max(end, start + span);
+				from = to - span;
+			}
+		}
+		if (to <= from) {
+			to = from + 1;
+		}
+		xAxis.setLowerBound(new Date(from));
+		xAxis.setUpperBound(new Date(to));
+		requestLayout();
+	}
+
+	/*
+	 * @returns the pyramid of the trace shown (null if none)
+	 */
+	public MinMaxPyramid getPyramid() {
+		return pyramid;
+	}
+
+	public DateAxis getXAxis() {
+		return xAxis;
+	}
+
+	public NumberAxis getYAxis() {
+		return yAxis;
+	}
+
+	public DoubleProperty thresholdProperty() {
+		return threshold;
+	}
+
+	public double getThreshold() {
+		return threshold.get();
+	}
+
+	public void setThreshold(double value) {
+		threshold.set(value);
+	}
+
+	@Override
+	protected void layoutChildren() {
+		double top = snappedTopInset(), left = snappedLeftInset();
+		double width = getWidth() - left - snappedRightInset();
+		double height = getHeight() - top - snappedBottomInset();
+		double axisWidth = snapSize(yAxis.prefWidth(height));
+		double axisHeight = snapSize(xAxis.prefHeight(width));
+		double plotWidth = Math.max(0, width - axisWidth);
+		double plotHeight = Math.max(0, height - axisHeight);
+		yAxis.resizeRelocate(left, top, axisWidth, plotHeight);
+		xAxis.resizeRelocate(left + axisWidth, top + plotHeight, plotWidth, axisHeight);
+		canvas.relocate(left + axisWidth, top);
+		canvas.setWidth(plotWidth);
+		canvas.setHeight(plotHeight);
+		draw();
+	}
+
+	/*
+	 * Draw the movement spans, the trace, the onsets and the threshold for the current view
+	 */
+	private void draw() {
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		double w = canvas.getWidth(), h = canvas.getHeight();
+		gc.clearRect(0, 0, w, h);
+		if (w < 1 || h < 1) {
+			return;
+		}
+		long lower = xAxis.getLowerBound().getTime(), upper = xAxis.getUpperBound().getTime();
+		double xScale = w / Math.max(1, upper - lower);
+		double yLower = yAxis.getLowerBound();
+		double yScale = h / Math.max(1e-9, yAxis.getUpperBound() - yLower);
+
+		// Spans in view, behind the trace
+		if (runs.length < 2 * ((int) Math.ceil(w) + 4)) {
+			runs = new double[2 * ((int) Math.ceil(w) + 4)];
+		}
+		for (int type = 0; type < EventSpans.TYPES.length; type++) {
+			int n = events.runs(type, lower, upper, xScale, runs);
+			gc.setFill(LineChartWithMarkers.typeColor(type).deriveColor(0, 1, 1, 0.25));
+			for (int i = 0; i < n; i++) {
+				gc.fillRect(runs[2 * i], 0, runs[2 * i + 1] - runs[2 * i], h);
+			}
+		}
+
+		if (pyramid != null && size > 0) {
+			int pixels = (int) Math.ceil(w);
+			if (pointTime.length < Downsampler.POINTS_PER_BUCKET * pixels) {
+				pointTime = new long[Downsampler.POINTS_PER_BUCKET * pixels];
+				pointValue = new float[pointTime.length];
+			}
+			// One sample either side of the view so the line runs off the edges
+			int first = Math.max(0, search(time, size, lower) - 1);
+			int last = Math.min(size, search(time, size, upper + 1) + 1);
+			int n = pyramid.reduce(time, first, last, lower, upper, pixels, pointTime, pointValue);
+			gc.setStroke(TRACE);
+			gc.setLineWidth(1);
+			gc.beginPath();
+			for (int i = 0; i < n; i++) {
+				double x = (pointTime[i] - lower) * xScale;
+				double y = h - (pointValue[i] - yLower) * yScale;
+				if (i == 0) {
+					gc.moveTo(x, y);
+				} else {
+					gc.lineTo(x, y);
+				}
+			}
+			gc.stroke();
+		}
+
+		// Onsets in view, 0.5 for crispness
+		int from = events.indexAt(lower);
+		int to = events.indexAt(upper + 1);
+		gc.setLineWidth(1);
+		for (int i = from; i < to; i++) {
+			double x = Math.floor((events.getStart(i) - lower) * xScale) + 0.5;
+			gc.setStroke(LineChartWithMarkers.typeColor(events.getType(i)));
+			gc.strokeLine(x, 0, x, h);
+		}
+
+		double y = thresholdY();
+		gc.setStroke(THRESHOLD);
+		gc.setLineWidth(2);
+		gc.strokeLine(0, y, w, y);
+	}
+
+	/*
+	 * @returns the y of the threshold line on the canvas
+	 */
+	private double thresholdY() {
+		double yLower = yAxis.getLowerBound();
+		double yScale = canvas.getHeight() / Math.max(1e-9, yAxis.getUpperBound() - yLower);
+		return Math.floor(canvas.getHeight() - (threshold.get() - yLower) * yScale) + 0.5;
+	}
+
+	private boolean nearThreshold(double y) {
+		return Math.abs(y - thresholdY()) <= GRAB;
+	}
+
+	private void pressed(MouseEvent e) {
+		draggingThreshold = nearThreshold(e.getY());
+		pressX = e.getX();
+		pressLower = xAxis.getLowerBound().getTime();
+		pressUpper = xAxis.getUpperBound().getTime();
+	}
+
+	private void dragged(MouseEvent e) {
+		if (draggingThreshold) {
+			double yLower = yAxis.getLowerBound();
+			double value = yLower + (canvas.getHeight() - e.getY()) / canvas.getHeight() * (yAxis.getUpperBound() - yLower);
+			threshold.set(Math.max(0, value));
+		} else if (canvas.getWidth() > 0) {
+			// Move the view with the mouse
+			long shift = Math.round((pressX - e.getX()) / canvas.getWidth() * (pressUpper - pressLower));
+			setWindow(pressLower + shift, pressUpper + shift);
+		}
+	}
+
+	private void scrolled(ScrollEvent e) {
+		if (canvas.getWidth() <= 0 || e.getDeltaY() == 0) {
+			return;
+		}
+		// Keep the time under the mouse where it is
+		double factor = (e.getDeltaY() > 0) ? 1 / ZOOM : ZOOM;
+		long lower = xAxis.getLowerBound().getTime(), upper = xAxis.getUpperBound().getTime();
+		long at = lower + Math.round(e.getX() / canvas.getWidth() * (upper - lower));
+		setWindow(at - Math.round((at - lower) * factor), at + Math.round((upper - at) * factor));
+	}
+
+	/*
+	 * @returns the index of the first of the values [0, size) at or after the given time (size if none)
+	 */
+	private static int search(long[] values, int size, long millis) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < millis) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}